@@ -1,9 +1,14 @@
 import java.lang.reflect.Method;
-import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.Calendar;
 import java.util.Date;
-import java.util.TimeZone;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
 
+import lotus.domino.NotesThread;
 import lotus.notes.addins.JavaServerAddin;
 import lotus.notes.internal.MessageQueue;
 
@@ -32,6 +37,11 @@ public final class JAddin extends JavaServerAddin {
 	static final String		STAT_JADDIN_VERSION		= JADDIN_NAME + ".VersionNumber";
 	static final String		STAT_JADDIN_DATE		= JADDIN_NAME + ".VersionDate";
 	static final String		STAT_JADDIN_STARTTIME	= JADDIN_NAME + ".StartedTime";
+	static final long		STATE_FLUSH_INTERVAL_MS	= 250L;				// At most 4 status line updates per second
+
+	// Thread-safe ISO 8601 format and the last formatted timestamp (most calls format the current second)
+	private static final DateTimeFormatter	ISO_DATE_FORMAT	= DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss'Z'").withZone(ZoneOffset.UTC);
+	private static volatile ISODate			gLastISODate	= new ISODate(Long.MIN_VALUE, null);
 
 	/**
 	 * Convert ISO 8601 date string to Java Date
@@ -41,16 +51,31 @@ public final class JAddin extends JavaServerAddin {
 	 */
 	static final Calendar fromISODate(String isoDate) {
 
-		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
-		dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+		Instant instant = parseISODate(isoDate);
+
+		if (instant == null)
+			return null;
+
 		Calendar calendar = Calendar.getInstance();
-		
+		calendar.setTimeInMillis(instant.toEpochMilli());
+		return (calendar);
+	}
+
+	/**
+	 * Convert ISO 8601 UTC string to Java Instant
+	 *
+	 * Note: This method is also called by the JAddinThread and the user add-in
+	 *
+	 * @param isoDate Date in ISO format ("yyyy-mm-ddThh:mm:ssZ")
+	 * @return Instant or null if the string is not a valid date
+	 */
+	static final Instant parseISODate(String isoDate) {
+
 		try {
-			calendar.setTime(dateFormat.parse(isoDate));
+			return (Instant.from(ISO_DATE_FORMAT.parse(isoDate)));
 		} catch (Exception e) {
 			return null;
 		}
-		return (calendar);
 	}
 	
 	/**
@@ -73,10 +98,42 @@ public final class JAddin extends JavaServerAddin {
 	 * @param date Java Date object
 	 * @return Formatted date in ISO format ("yyyy-mm-ddThh:mm:ssZ")
 	 */
-	static final synchronized String toISODateUTC(Date date) {
-		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
-		dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
-		return (dateFormat.format(date));	
+	static final String toISODateUTC(Date date) {
+		return (toISODateUTC(date.getTime()));
+	}
+
+	/**
+	 * Convert Java Instant to ISO 8601 UTC string
+	 *
+	 * Note: This method is also called by the JAddinThread and the user add-in
+	 *
+	 * @param instant Java Instant object
+	 * @return Formatted date in ISO format ("yyyy-mm-ddThh:mm:ssZ")
+	 */
+	static final String toISODateUTC(Instant instant) {
+		return (toISODateUTC(instant.toEpochMilli()));
+	}
+
+	/**
+	 * Convert milliseconds since the epoch to ISO 8601 UTC string. The last formatted second is cached, so repeated
+	 * calls within the same second return the same string without formatting.
+	 *
+	 * Note: This method is also called by the JAddinThread and the user add-in
+	 *
+	 * @param epochMillis Milliseconds since 1970-01-01T00:00:00Z
+	 * @return Formatted date in ISO format ("yyyy-mm-ddThh:mm:ssZ")
+	 */
+	static final String toISODateUTC(long epochMillis) {
+
+		long	epochSecond	= Math.floorDiv(epochMillis, 1000L);
+		ISODate	lastISODate	= gLastISODate;
+
+		if (lastISODate.gEpochSecond == epochSecond)
+			return (lastISODate.gText);
+
+		lastISODate		= new ISODate(epochSecond, ISO_DATE_FORMAT.format(Instant.ofEpochSecond(epochSecond)));
+		gLastISODate	= lastISODate;
+		return (lastISODate.gText);
 	}
 	
 	// Instance variables
@@ -86,6 +143,11 @@ public final class JAddin extends JavaServerAddin {
 	private	String			gUserAddinParameter		= null;
 	private MessageQueue	gDominoMsgQueue			= null;
 	private int 			gDominoTaskID			= 0;
+
+	// Pending status line texts (last value wins) written by the status line thread
+	private final Map<Integer, String>	gPendingStates			= new ConcurrentHashMap<Integer, String>();
+	private volatile Thread				gStateFlusher			= null;
+	private volatile boolean			gStateFlusherStopped	= false;
 		
 	private boolean			gCleanupDone			= false;
 	private boolean			gStartupError			= false;
@@ -139,7 +201,8 @@ public final class JAddin extends JavaServerAddin {
 		try {
 			logDebug("Freeing the Domino resources");
 
-			// Delete the Domino task status line (Show Tasks)
+			// Write the pending status lines and delete the Domino task status line (Show Tasks)
+			stopStateFlusher();
 			deleteAddinStatusLine(gDominoTaskID);
 			gDominoTaskID = 0;
 			
@@ -203,7 +266,26 @@ public final class JAddin extends JavaServerAddin {
 	 */
 	public final void deleteAddinStatusLine(int id) {
 		if (id != 0) {
-			AddInDeleteStatusLine(id);
+			synchronized (gPendingStates) {
+				gPendingStates.remove(id);
+				AddInDeleteStatusLine(id);
+			}
+		}
+	}
+
+	/**
+	 * Write the pending texts to the Domino task status lines.
+	 */
+	private final void flushAddinStates() {
+
+		synchronized (gPendingStates) {
+			for (Integer id : gPendingStates.keySet()) {
+				String text = gPendingStates.remove(id);
+
+				if (text != null) {
+					AddInSetStatusLine(id, text);
+				}
+			}
 		}
 	}
 
@@ -538,14 +620,20 @@ public final class JAddin extends JavaServerAddin {
 				
 					logDebug(JADDIN_NAME + " termination in progress");
 				
-					// Call the user addInStop() method
+					// Call the user addInStop() method and signal the stop request to the event inbox
 					if (isUserThreadAlive()) {
+						gUserThread.postAddinEvent(JAddinThread.AddinEvent.EventType.STOP, null);
+
+						gUserThread.watchdogBegin(gUserAddinName + ".addinStop()", true);
+
 						try {
 							logDebug("Calling " + gUserAddinName + ".addinStop()");
 							classAddinStop.invoke(gUserThread, new Object[] {});
 						} catch (Exception e) {
 							logMessage("Unhandled exception in " + gUserAddinName + ".addinStop(): " + e.toString());
 							break;
+						} finally {
+							gUserThread.watchdogEnd();
 						}
 					}
 				
@@ -593,6 +681,11 @@ public final class JAddin extends JavaServerAddin {
 					// Check if JVM heap space too small
 					//
 					checkHeapSpace();
+
+					//
+					// Update the framework statistics of the user add-in
+					//
+					gUserThread.updateStatistics();
 	
 					//
 					// Check if next hour
@@ -602,14 +695,19 @@ public final class JAddin extends JavaServerAddin {
 					if (currentDate.get(Calendar.HOUR_OF_DAY) != lastDate.get(Calendar.HOUR_OF_DAY)) {
 	
 						// Call the user addinNextHour() method
+						gUserThread.watchdogBegin(gUserAddinName + ".addinNextHour()", true);
+
 						try {
 							logDebug("Calling " + gUserAddinName + ".addinNextHour()");
 							classAddinNextHour.invoke(gUserThread, new Object[] {});
+							gUserThread.postAddinEvent(JAddinThread.AddinEvent.EventType.NEXT_HOUR, null);
 						} catch (Exception e) {
 							logMessage("Unhandled exception in " + gUserAddinName + ".addinNextHour(): " + e.toString());
 							// Write the stack trace directly to the standard output
 							e.printStackTrace();
 							break;
+						} finally {
+							gUserThread.watchdogEnd();
 						}
 					}
 					
@@ -619,14 +717,19 @@ public final class JAddin extends JavaServerAddin {
 					if (currentDate.get(Calendar.DAY_OF_MONTH) != lastDate.get(Calendar.DAY_OF_MONTH)) {
 
 						// Call the user addinNextDay() method
+						gUserThread.watchdogBegin(gUserAddinName + ".addinNextDay()", true);
+
 						try {
 							logDebug("Calling " + gUserAddinName + ".addinNextDay()");
 							classAddinNextDay.invoke(gUserThread, new Object[] {});
+							gUserThread.postAddinEvent(JAddinThread.AddinEvent.EventType.NEXT_DAY, null);
 						} catch (Exception e) {
 							logMessage("Unhandled exception in " + gUserAddinName + ".addinNextDay(): " + e.toString());
 							// Write the stack trace directly to the standard output
 							e.printStackTrace();
 							break;
+						} finally {
+							gUserThread.watchdogEnd();
 						}
 					}
 		
@@ -639,14 +742,19 @@ public final class JAddin extends JavaServerAddin {
 				default: {
 
 					// Call the user method addinCommand(command) to process the command
+					gUserThread.watchdogBegin(gUserAddinName + ".addinCommand()", true);
+
 					try {
 						logDebug("Calling " + gUserAddinName + ".addinCommand()");
 						classAddinCommand.invoke(gUserThread, new Object[] {new String(commandLine)});
+						gUserThread.postAddinEvent(JAddinThread.AddinEvent.EventType.COMMAND, commandLine);
 					} catch (Exception e) {
 						logMessage("Unhandled exception in " + gUserAddinName + ".addinCommand(): " + e.toString());
 						// Write the stack trace directly to the standard output
 						e.printStackTrace();
 						break;
+					} finally {
+						gUserThread.watchdogEnd();
 					}
 
 					// Wait for next command from queue
@@ -675,7 +783,9 @@ public final class JAddin extends JavaServerAddin {
 	}
 	
 	/**
-	 * Set the text of the add-in which is shown in command <code>"show tasks"</code>.
+	 * Set the text of the add-in which is shown in command <code>"show tasks"</code>. The text is written by the status
+	 * line thread at most 4 times per second, only the last text set within this interval is shown. After the status
+	 * line thread is stopped, the text is written directly.
 	 * 
 	 * Note: This method is also called by the JAddinThread and the user add-in
 	 * 
@@ -688,7 +798,21 @@ public final class JAddin extends JavaServerAddin {
 			return;
 		}
 		
-		AddInSetStatusLine(id, message);
+		gPendingStates.put(id, message);
+
+		Thread stateFlusher = gStateFlusher;
+
+		if ((stateFlusher == null) && !gStateFlusherStopped) {
+			stateFlusher = startStateFlusher();
+		}
+
+		// Write the text directly if the status line thread is stopped
+		if (stateFlusher == null) {
+			flushAddinStates();
+			return;
+		}
+
+		LockSupport.unpark(stateFlusher);
 	}
 
 	/**
@@ -697,12 +821,7 @@ public final class JAddin extends JavaServerAddin {
 	 * @param	text	Text to be set
 	 */
 	private final void setAddinState(String text) {
-		
-		if (gDominoTaskID == 0) {
-			return;
-		}
-		
-		AddInSetStatusLine(gDominoTaskID, text);
+		setAddinState(gDominoTaskID, text);
 	}
 	
 	/**
@@ -742,6 +861,69 @@ public final class JAddin extends JavaServerAddin {
 		StatUpdate(addinName, statsName, JavaServerAddin.ST_UNIQUE, JavaServerAddin.VT_TEXT, text);
 	}
 
+	/**
+	 * Start the status line thread. The thread sleeps until a text is set and then writes the pending texts at most
+	 * every 250 milliseconds.
+	 *
+	 * @return	Status line thread or null if already stopped
+	 */
+	private final synchronized Thread startStateFlusher() {
+
+		if ((gStateFlusher != null) || gStateFlusherStopped) {
+			return (gStateFlusher);
+		}
+
+		Thread stateFlusher = new NotesThread(() -> {
+			while (!Thread.currentThread().isInterrupted()) {
+				if (gPendingStates.isEmpty()) {
+					LockSupport.park(this);
+					continue;
+				}
+
+				flushAddinStates();
+
+				try {
+					Thread.sleep(STATE_FLUSH_INTERVAL_MS);
+				} catch (InterruptedException e) {
+					break;
+				}
+			}
+		}, JADDIN_NAME + "-StatusLine");
+
+		stateFlusher.setDaemon(true);
+		stateFlusher.start();
+
+		gStateFlusher = stateFlusher;
+		return (stateFlusher);
+	}
+
+	/**
+	 * Stop the status line thread and write the pending texts. Texts set afterwards are written directly.
+	 */
+	private final void stopStateFlusher() {
+
+		Thread stateFlusher = null;
+
+		// Do not hold the lock while waiting for the thread
+		synchronized (this) {
+			stateFlusher			= gStateFlusher;
+			gStateFlusher			= null;
+			gStateFlusherStopped	= true;
+		}
+
+		if (stateFlusher != null) {
+			stateFlusher.interrupt();
+
+			try {
+				stateFlusher.join(1000L);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		flushAddinStates();
+	}
+
 	/**
 	 * Wait for user thread termination.
 	 * 
@@ -787,4 +969,26 @@ public final class JAddin extends JavaServerAddin {
 			Thread.currentThread().interrupt();
 		}
 	}
+
+	/**
+	 * Formatted second cached by <code>toISODateUTC()</code>. The instances are immutable, so they can be shared without
+	 * locking.
+	 */
+	private static final class ISODate {
+
+		// Instance variables
+		final long		gEpochSecond;
+		final String	gText;
+
+		/**
+		 * Create the cache entry.
+		 *
+		 * @param	epochSecond	Seconds since the epoch
+		 * @param	text		Formatted date
+		 */
+		ISODate(long epochSecond, String text) {
+			gEpochSecond	= epochSecond;
+			gText			= text;
+		}
+	}
 }
@@ -1,9 +1,77 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.management.LockInfo;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MonitorInfo;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.UUID;
 import java.util.Vector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.SecretKeySpec;
 
 import lotus.domino.NotesFactory;
@@ -15,7 +83,9 @@ import lotus.domino.Base;
 import lotus.domino.Database;
 import lotus.domino.DateTime;
 import lotus.domino.Document;
+import lotus.domino.DocumentCollection;
 import lotus.domino.MIMEEntity;
+import lotus.domino.MIMEHeader;
 import lotus.domino.View;
 import lotus.domino.ViewEntry;
 import lotus.domino.ViewEntryCollection;
@@ -33,6 +103,54 @@ public abstract class JAddinThread extends NotesThread {
 	
 	// Constants
 	static final String	STAT_DOMINO_VERSION = "Domino.Version";
+	static final String	STAT_LIVE_HANDLES	= "Domino.LiveHandles";
+	static final String	STAT_ALLOC_HANDLES	= "Domino.AllocatedHandles";
+	static final String	STAT_RECYCLED		= "Domino.RecycledObjects";
+	static final String	STAT_RECYCLE_TIME	= "Domino.RecycleTimeMs";
+	static final String	STAT_BREAKER_PREFIX	= "CircuitBreaker.";
+	static final String	STAT_MAIL_QUEUED	= "Mail.QueueDepth";
+	static final String	STAT_MAIL_DEPOSITED	= "Mail.Deposited";
+	static final String	STAT_MAIL_FAILED	= "Mail.Failed";
+	static final String	STAT_MAIL_RETRIES	= "Mail.Retries";
+	static final String	STAT_MAIL_OUTBOX	= "Mail.OutboxDepth";
+	static final String	STAT_MAIL_PREFIX	= "Mail.";
+	static final String	STAT_STREAM_BYTES	= "Stream.Bytes";
+	static final String	STAT_STREAM_RATE	= "Stream.ThroughputMBs";
+	static final String	STAT_WORKER_THREADS	= "Workers.PoolSize";
+	static final String	STAT_WORKER_ACTIVE	= "Workers.ActiveTasks";
+	static final String	STAT_WORKER_QUEUED	= "Workers.QueueDepth";
+	static final String	STAT_WORKER_DONE	= "Workers.CompletedTasks";
+	static final String	STAT_WATCHDOG_STALLS	= "Watchdog.Stalls";
+	static final String	STAT_WATCHDOG_LONGEST	= "Watchdog.LongestStallMs";
+	static final String	STAT_WATCHDOG_ACTIVE	= "Watchdog.ActiveCalls";
+	static final long	WATCHDOG_INTERVAL_MS	= 1000L;
+	static final long	WORKER_STOP_TIMEOUT_MS	= 3000L;		// Worker, I/O and mail budgets fit into the 8 seconds JAddin waits
+	static final long	IO_STOP_TIMEOUT_MS		= 1000L;
+	static final String	WORKER_THREADS_SETTING	= "_WorkerThreads";
+	static final int	EVENT_INBOX_SIZE		= 1000;
+	private static final Method	THREAD_IS_VIRTUAL	= getThreadMethod("isVirtual");		// Java 21 and later
+	static final int	MAIL_QUEUE_SIZE		= 1000;
+	static final int	MAIL_BATCH_SIZE		= 100;
+	static final long	MAIL_STOP_TIMEOUT_MS	= 3000L;
+	static final int	MAIL_MAX_ATTEMPTS		= 8;
+	static final long	MAIL_RETRY_DELAY_MS		= 5000L;
+	static final long	MAIL_RETRY_MAX_DELAY_MS	= 600000L;
+	static final String	OUTBOX_SUFFIX			= ".outbox";
+	static final int	MIME_CHUNK_SIZE			= 65536;
+	static final int	RECYCLE_CHUNK_SIZE	= 1000;
+	static final long	CLUSTER_CACHE_MS	= 600000L;
+	static final String	CHECKPOINT_SUFFIX	= ".checkpoint";
+	static final int	AES_KEY_CACHE_SIZE	= 256;
+	static final byte	AES_GCM_VERSION		= 1;
+	static final int	AES_GCM_IV_LENGTH	= 12;
+	static final int	AES_GCM_TAG_BITS	= 128;
+	static final int	AES_KDF_ITERATIONS	= 65536;
+	static final int	AES_KDF_SALT_LENGTH	= 16;
+	static final byte	AES_GCM_STREAM_VERSION	= 2;
+	private static final byte[]	AES_MASTER_KEY_SALT	= (JAddin.JADDIN_NAME + " AES-GCM").getBytes(StandardCharsets.UTF_8);
+	static final int	STREAM_CHUNK_SIZE	= 65536;
+	private static final byte[]	BASE64_ALPHABET	= "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes(StandardCharsets.US_ASCII);
+	private static final int[]	BASE64_VALUES	= getBase64Values();
 	
 	// Instance variables
 	private JAddin		gJAddinMain			= null;
@@ -42,13 +160,109 @@ public abstract class JAddinThread extends NotesThread {
 	private int			gDominoTaskID		= 0;
 	private	boolean		gStartupError		= false;
 	private	boolean		gCleanupDone		= false;
-	private String		gDBLastErrorMessage	= null;
+	private Properties	gCheckpoints		= null;
+	private Properties	gPendingCheckpoints	= new Properties();
+
+	// Error message of the last dbXXXX method (confined to the calling thread)
+	private final ThreadLocal<String>	gDBLastErrorMessage	= new ThreadLocal<String>();
+
+	// Domino objects returned by the dbXXXX methods in debug mode and not yet recycled (weakly referenced with allocation site)
+	private final Set<DbHandleReference>	gLiveHandles		= ConcurrentHashMap.newKeySet();
+	private final ReferenceQueue<Base>		gReleasedHandles	= new ReferenceQueue<Base>();
+	private final AtomicLong			gAllocatedHandles	= new AtomicLong();
+	private final AtomicLong			gRecycledObjects	= new AtomicLong();
+	private final AtomicLong			gRecycleTimeNanos	= new AtomicLong();
+	private final ThreadLocal<DbArena>	gCurrentArena		= new ThreadLocal<DbArena>();
+
+	// Health score of the servers used by dbOpen(String[], String) and dbLookupFanOut(), cached cluster members
+	private final Map<String, DbServerHealth>	gServerHealth	= new ConcurrentHashMap<String, DbServerHealth>();
+	private final Map<String, DbClusterMembers>	gClusterMembers	= new ConcurrentHashMap<String, DbClusterMembers>();
+
+	// Circuit breakers and adaptive limits per database
+	private final Map<String, DbCircuitBreaker>	gCircuitBreakers	= new ConcurrentHashMap<String, DbCircuitBreaker>();
+	private volatile long	gBreakerLatencyBudgetMillis	= 5000L;
+	private volatile int	gBreakerFailureThreshold	= 5;
+	private volatile long	gBreakerOpenTimeMillis		= 30000L;
+
+	// Mail submission queue drained by the mail submitter thread
+	private final BlockingQueue<DbMailMessage>	gMailQueue			= new ArrayBlockingQueue<DbMailMessage>(MAIL_QUEUE_SIZE);
+	private final AtomicLong					gMailDeposited		= new AtomicLong();
+	private final AtomicLong					gMailFailed			= new AtomicLong();
+	private final AtomicLong					gMailRetries		= new AtomicLong();
+	private final AtomicLong					gOutboxDepth		= new AtomicLong();
+	private final DelayQueue<DbMailMessage>		gMailRetryQueue		= new DelayQueue<DbMailMessage>();
+	private DbMailSubmitter						gMailSubmitter		= null;
+	private volatile String						gMailDomain			= null;
+	private volatile DbRouterMailBox[]			gRouterMailBoxes	= null;
+	private final AtomicInteger					gMailBoxIndex		= new AtomicInteger();
+	private volatile String						gDataDirectory		= null;
+
+	// Derived AES keys (bounded) and cipher instances per thread
+	private final Map<ByteBuffer, SecretKeySpec>	gECBKeys		= newKeyCache();
+	private final Map<ByteBuffer, SecretKeySpec>	gGCMKeys		= newKeyCache();
+	private final ThreadLocal<Cipher>				gECBCipher		= ThreadLocal.withInitial(() -> newCipher("AES/ECB/PKCS5Padding"));
+	private final ThreadLocal<Cipher>				gGCMCipher		= ThreadLocal.withInitial(() -> newCipher("AES/GCM/NoPadding"));
+	private final ThreadLocal<Mac>					gKeyMac			= ThreadLocal.withInitial(() -> newMac("HmacSHA256"));
+	private final SecureRandom						gSecureRandom	= new SecureRandom();
+
+	// Direct buffers per thread (input, held plain text, output) and metrics of the streaming methods
+	private final ThreadLocal<ByteBuffer[]>	gStreamBuffers	= ThreadLocal.withInitial(() -> new ByteBuffer[] {
+			ByteBuffer.allocateDirect(STREAM_CHUNK_SIZE), ByteBuffer.allocateDirect(STREAM_CHUNK_SIZE + 64), ByteBuffer.allocateDirect(STREAM_CHUNK_SIZE + 64)});
+	private final AtomicLong				gStreamBytes	= new AtomicLong();
+	private final AtomicLong				gStreamNanos	= new AtomicLong();
+
+	// Message digests per thread and algorithm, pool of the batch hashing methods
+	private final ThreadLocal<Map<String, MessageDigest>>	gMessageDigests	= ThreadLocal.withInitial(() -> new HashMap<String, MessageDigest>());
+	private ForkJoinPool										gHashPool		= null;
+
+	// Worker threads with their own Domino session
+	private volatile ThreadPoolExecutor	gWorkerExecutor	= null;
+	private volatile int				gWorkerThreads	= Runtime.getRuntime().availableProcessors();
+	private final AtomicInteger			gWorkerNumber	= new AtomicInteger();
+
+	// Executor for blocking non-Domino I/O (virtual threads if supported by the JVM)
+	private volatile ExecutorService	gIOExecutor		= null;
+
+	// Event inbox of the user thread (enabled by the first call of waitForEvent() or postEvent())
+	private final BlockingQueue<AddinEvent>	gEventInbox			= new ArrayBlockingQueue<AddinEvent>(EVENT_INBOX_SIZE);
+	private volatile boolean				gEventInboxEnabled	= false;
+	private volatile AddinEvent				gStopEvent			= null;
+
+	// Watchdog of the callbacks and database calls (budgets in milliseconds)
+	private final Map<Thread, DbWatch>	gWatches				= new ConcurrentHashMap<Thread, DbWatch>();
+	private volatile long				gWatchdogCallbackMillis	= 60000L;
+	private volatile long				gWatchdogDbMillis		= 30000L;
+	private volatile boolean			gWatchdogInterrupt		= false;
+	private volatile boolean			gWatchdogDumpToFile		= false;
+	private final AtomicLong			gWatchdogStalls			= new AtomicLong();
+	private final AtomicLong			gWatchdogLongestMillis	= new AtomicLong();
+	private NotesThread					gWatchdog				= null;
 
 	/** Dummy constructor
 	 */
 	public JAddinThread() {
 	}
 	
+	/**
+	 * Get the circuit breaker of a database if a call is allowed.
+	 *
+	 * @param	dbName	Database name with path
+	 * @return	Circuit breaker (must be passed to <code>releaseCircuitBreaker()</code>) or null if the circuit is open
+	 */
+	private final DbCircuitBreaker acquireCircuitBreaker(String dbName) {
+
+		DbCircuitBreaker circuitBreaker = getCircuitBreaker(dbName);
+
+		if (circuitBreaker.allowRequest()) {
+			watchdogBegin("Database call on " + dbName, false);
+			return (circuitBreaker);
+		}
+
+		logDebug("Circuit breaker for " + dbName + " is open, call rejected");
+		gDBLastErrorMessage.set("Circuit breaker for " + dbName + " is open");
+		return null;
+	}
+
 	/**
 	 * This method performs all necessary cleanup tasks.
 	 */
@@ -64,6 +278,38 @@ public abstract class JAddinThread extends NotesThread {
 		// Delete Domino statistics
 		if (isJAddinAlive()) {
 			deleteDominoStatistic(JAddinThread.STAT_DOMINO_VERSION);
+			deleteDominoStatistic(JAddinThread.STAT_LIVE_HANDLES);
+			deleteDominoStatistic(JAddinThread.STAT_ALLOC_HANDLES);
+			deleteDominoStatistic(JAddinThread.STAT_RECYCLED);
+			deleteDominoStatistic(JAddinThread.STAT_RECYCLE_TIME);
+			deleteDominoStatistic(JAddinThread.STAT_MAIL_QUEUED);
+			deleteDominoStatistic(JAddinThread.STAT_MAIL_DEPOSITED);
+			deleteDominoStatistic(JAddinThread.STAT_MAIL_FAILED);
+			deleteDominoStatistic(JAddinThread.STAT_MAIL_RETRIES);
+			deleteDominoStatistic(JAddinThread.STAT_MAIL_OUTBOX);
+			deleteDominoStatistic(JAddinThread.STAT_STREAM_BYTES);
+			deleteDominoStatistic(JAddinThread.STAT_STREAM_RATE);
+			deleteDominoStatistic(JAddinThread.STAT_WORKER_THREADS);
+			deleteDominoStatistic(JAddinThread.STAT_WORKER_ACTIVE);
+			deleteDominoStatistic(JAddinThread.STAT_WORKER_QUEUED);
+			deleteDominoStatistic(JAddinThread.STAT_WORKER_DONE);
+			deleteDominoStatistic(JAddinThread.STAT_WATCHDOG_STALLS);
+			deleteDominoStatistic(JAddinThread.STAT_WATCHDOG_LONGEST);
+			deleteDominoStatistic(JAddinThread.STAT_WATCHDOG_ACTIVE);
+
+			if (gRouterMailBoxes != null) {
+				for (DbRouterMailBox routerMailBox : gRouterMailBoxes) {
+					deleteDominoStatistic(JAddinThread.STAT_MAIL_PREFIX + routerMailBox.gName + ".Deposited");
+					deleteDominoStatistic(JAddinThread.STAT_MAIL_PREFIX + routerMailBox.gName + ".LatencyMs");
+				}
+			}
+
+			for (String breakerName : gCircuitBreakers.keySet()) {
+				deleteDominoStatistic(JAddinThread.STAT_BREAKER_PREFIX + breakerName + ".State");
+				deleteDominoStatistic(JAddinThread.STAT_BREAKER_PREFIX + breakerName + ".LatencyMs");
+				deleteDominoStatistic(JAddinThread.STAT_BREAKER_PREFIX + breakerName + ".Limit");
+				deleteDominoStatistic(JAddinThread.STAT_BREAKER_PREFIX + breakerName + ".Rejected");
+			}
 		}
 		
 		// Delete the Domino task status line (Show Tasks)
@@ -77,6 +323,27 @@ public abstract class JAddinThread extends NotesThread {
 			gJAddinMain.sendQuitCommand();
 		}
 		
+		// Stop the I/O tasks (they may still pass work to the workers), then complete the tasks of the worker threads
+		// (they may still queue messages). The waits are not cut short by the interrupt JAddin sends if the user add-in
+		// does not terminate within 3 seconds.
+		stopIOExecutor();
+		stopWorkerExecutor();
+
+		// Deliver the queued messages
+		stopMailSubmitter();
+
+		// Stop the watchdog
+		stopWatchdog();
+
+		// Stop the batch hashing threads
+		synchronized (this) {
+			if (gHashPool != null)
+				gHashPool.shutdownNow();
+		}
+
+		// Report the Domino objects never recycled by the user add-in
+		logLeakedHandles();
+
 		// Free the Domino session object
 		dbRecycleObjects(gDominoSession);
 		gDominoSession	= null;
@@ -89,7 +356,10 @@ public abstract class JAddinThread extends NotesThread {
 	 * @param	command	Passed command line
 	 */
 	public void addinCommand(String command) {
-		logMessage("This add-in does not support any commands except 'Quit'");
+
+		// The command is delivered as event if the add-in uses the event inbox
+		if (!gEventInboxEnabled)
+			logMessage("This add-in does not support any commands except 'Quit'");
 	}
 	
 	/**
@@ -163,7 +433,218 @@ public abstract class JAddinThread extends NotesThread {
 	 * method returns, the add-in must terminate immediately.
 	 */
 	public abstract void addinStop();
-	
+
+	/**
+	 * Wait for the termination of an executor during the add-in termination. Interrupts do not end the wait, since they
+	 * would skip the following termination steps.
+	 *
+	 * @param	executor		Executor already shut down
+	 * @param	timeoutMillis	Maximum time to wait
+	 * @return	True if the executor has terminated, false if the timeout has elapsed
+	 */
+	private final boolean awaitTermination(ExecutorService executor, long timeoutMillis) {
+
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+		while (true) {
+			try {
+				return (executor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS));
+			} catch (InterruptedException e) {
+				logDebug("Interrupt ignored during termination");
+			}
+		}
+	}
+
+	/**
+	 * Wait for the termination of a thread during the add-in termination. Interrupts do not end the wait, since they
+	 * would skip the following termination steps.
+	 *
+	 * @param	thread			Thread requested to stop
+	 * @param	timeoutMillis	Maximum time to wait
+	 * @return	True if the thread has terminated, false if the timeout has elapsed
+	 */
+	private final boolean awaitTermination(Thread thread, long timeoutMillis) {
+
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+		while (thread.isAlive()) {
+
+			long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+
+			if (remainingMillis <= 0)
+				return false;
+
+			try {
+				thread.join(remainingMillis);
+			} catch (InterruptedException e) {
+				logDebug("Interrupt ignored during termination");
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Configure the watchdog of long-running calls. The watchdog checks every second how long the callbacks called by
+	 * the JAddin main thread (<code>addinCommand()</code>, <code>addinNextHour()</code>, <code>addinNextDay()</code>
+	 * and <code>addinStop()</code>) and the database calls guarded by the circuit breakers (<code>dbOpen()</code>,
+	 * <code>dbGetAllDocuments()</code>, <code>dbGetModifiedDocuments()</code>, <code>dbGetSingleDocumentByKey()</code>,
+	 * <code>dbMapView()</code>, <code>dbSearch()</code>, <code>dbSearchFormula()</code> and
+	 * <code>dbStampDocuments()</code>) are running. If a call exceeds its budget, the stack of the thread and of the owner of the lock it waits for are
+	 * written to the Domino console or to a file <code>AddinName-stall-nnnnnnnnnnnnn.txt</code> in the Domino data
+	 * directory.
+	 *
+	 * @param	callbackBudgetMillis	Budget of the callbacks (default 60000)
+	 * @param	dbBudgetMillis			Budget of the database calls (default 30000)
+	 * @param	interruptStalled		Interrupt the stalled thread (default false)
+	 * @param	dumpToFile				Write the thread dumps to a file instead of the console (default false)
+	 */
+	public final void configureWatchdog(long callbackBudgetMillis, long dbBudgetMillis, boolean interruptStalled, boolean dumpToFile) {
+
+		if (callbackBudgetMillis > 0)
+			gWatchdogCallbackMillis = callbackBudgetMillis;
+
+		if (dbBudgetMillis > 0)
+			gWatchdogDbMillis = dbBudgetMillis;
+
+		gWatchdogInterrupt	= interruptStalled;
+		gWatchdogDumpToFile	= dumpToFile;
+	}
+
+	/**
+	 * Create a progress indicator shown in the status line of the add-in (<code>"show tasks"</code>), e.g.
+	 * <code>"Processing documents 1200/5000 (24%), 310/s, ETA 00:00:12"</code>. The indicator may be updated from
+	 * several threads for every processed item; the status line is only updated 4 times per second.
+	 *
+	 * @param	operation	Description of the operation
+	 * @param	total		Total number of items or 0 if unknown
+	 * @return	Progress indicator (close it to show the final state)
+	 */
+	public final DbProgress createProgress(String operation, long total) {
+		return (new DbProgress(operation, total));
+	}
+
+	/**
+	 * Acquire a permit to access a database from a background job. The number of concurrent permits per database is
+	 * adapted to the measured latency (AIMD): it grows by one per round of fast calls and is halved on slow or failed
+	 * calls, e.g. <code>try (DbPermit permit = dbAcquirePermit("app.nsf", 5000)) { if (permit != null) ... }</code>.
+	 * A permit is refused while the circuit of the database is open. If the circuit is half-open, the first database
+	 * call made with the permit is the trial call which closes or reopens the circuit.
+	 *
+	 * @param	dbName			Database name with path
+	 * @param	timeoutMillis	Maximum time to wait for a permit
+	 * @return	Permit (must be closed) or null if timeout, interrupt or the circuit breaker of the database is open
+	 */
+	public final DbPermit dbAcquirePermit(String dbName, long timeoutMillis) {
+
+		// Initialize
+		gDBLastErrorMessage.remove();
+
+		// Check arguments
+		if ((dbName == null) || (dbName.length() == 0))
+			return null;
+
+		DbCircuitBreaker circuitBreaker = getCircuitBreaker(dbName);
+
+		try {
+			if (circuitBreaker.acquirePermit(timeoutMillis))
+				return (new DbPermit(circuitBreaker));
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		gDBLastErrorMessage.set("No permit available for " + dbName);
+		return null;
+	}
+
+	/**
+	 * Set the limits of the circuit breakers protecting the database calls (<code>dbOpen()</code>,
+	 * <code>dbGetAllDocuments()</code>, <code>dbGetModifiedDocuments()</code>, <code>dbGetSingleDocumentByKey()</code>,
+	 * <code>dbMapView()</code>, <code>dbSearch()</code>, <code>dbSearchFormula()</code> and
+	 * <code>dbStampDocuments()</code>). A circuit opens if the given number of consecutive calls fail or exceed the
+	 * latency budget. All calls to the database are then rejected until the open time has elapsed and a single trial
+	 * call succeeds.
+	 *
+	 * @param	latencyBudgetMillis	Maximum latency of a call before it is considered as failed (default 5000)
+	 * @param	failureThreshold	Number of consecutive failed calls which open the circuit (default 5)
+	 * @param	openTimeMillis		Time the circuit stays open (default 30000)
+	 */
+	public final void dbConfigureCircuitBreaker(long latencyBudgetMillis, int failureThreshold, long openTimeMillis) {
+
+		if ((latencyBudgetMillis < 1) || (failureThreshold < 1) || (openTimeMillis < 1)) {
+			logMessage("Error: dbConfigureCircuitBreaker(): all arguments must be greater than 0");
+			return;
+		}
+
+		gBreakerLatencyBudgetMillis	= latencyBudgetMillis;
+		gBreakerFailureThreshold	= failureThreshold;
+		gBreakerOpenTimeMillis		= openTimeMillis;
+	}
+
+	/**
+	 * Persist the checkpoint of the last <code>dbGetModifiedDocuments()</code> call. Call this method after all returned
+	 * documents have been processed, so a restart of the add-in resumes at this point.
+	 *
+	 * @param	db				Domino database
+	 * @param	checkpointName	Name of the checkpoint
+	 * @return	Indicator (success or failure)
+	 */
+	public final boolean dbCommitCheckpoint(Database db, String checkpointName) {
+
+		// Initialize
+		gDBLastErrorMessage.remove();
+
+		// Check arguments
+		if ((db == null) || !(db instanceof Database))
+			return false;
+
+		if ((checkpointName == null) || (checkpointName.length() == 0))
+			return false;
+
+		File checkpointFile = null;
+		File tempFile		= null;
+
+		try {
+			String checkpointKey	= db.getReplicaID() + '.' + checkpointName;
+			String untilTime		= gPendingCheckpoints.getProperty(checkpointKey);
+
+			if (untilTime == null) {
+				logDebug("No pending checkpoint " + checkpointName + " to commit");
+				return false;
+			}
+
+			// Worker threads may commit concurrently, the checkpoint file is written by one thread at a time
+			synchronized (gPendingCheckpoints) {
+				Properties checkpoints = loadCheckpoints();
+				checkpoints.setProperty(checkpointKey, untilTime);
+				gPendingCheckpoints.remove(checkpointKey);
+
+				// Write to a temporary file and replace the checkpoint file to never leave a partial file behind
+				checkpointFile	= getCheckpointFile();
+				tempFile		= new File(checkpointFile.getPath() + ".tmp");
+
+				try (FileOutputStream outputStream = new FileOutputStream(tempFile)) {
+					checkpoints.store(outputStream, JAddin.JADDIN_NAME + " checkpoints of " + gUserAddinName);
+				}
+
+				Files.move(tempFile.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+
+			logDebug("Checkpoint " + checkpointName + " committed: " + JAddin.toISODateUTC(new Date(Long.parseLong(untilTime))));
+			return true;
+
+		} catch (Exception e) {
+			logMessage("Unable to write checkpoint file " + checkpointFile + ": " + e.getMessage());
+			gDBLastErrorMessage.set(e.getMessage());
+
+			if (tempFile != null)
+				tempFile.delete();
+
+			return false;
+		}
+	}
+
 	/**
 	 * Get all documents or documents matching a key from a view.
 	 * 
@@ -175,7 +656,7 @@ public abstract class JAddinThread extends NotesThread {
 	public final Vector<Document> dbGetAllDocuments(Database db, String viewName, String key) {
 		
 		// Initialize
-		gDBLastErrorMessage = null;
+		gDBLastErrorMessage.remove();
 
 		Vector<Document> documentVector	= new Vector<Document>(0, 1);
 		
@@ -195,10 +676,20 @@ public abstract class JAddinThread extends NotesThread {
 		ViewEntry			dominoViewEntry				= null;
 		ViewEntry			dominoViewEntryNext			= null;
 		String				dominoDbName				= null;
+		DbCircuitBreaker	circuitBreaker				= null;
+		long				startTime					= System.nanoTime();
+		boolean				failed						= false;
 		
 		try {
 			dominoDbName = db.getFilePath();
-			dominoView	 = db.getView(viewName);
+
+			// Fail fast if the database is overloaded or unavailable
+			circuitBreaker = acquireCircuitBreaker(dominoDbName);
+
+			if (circuitBreaker == null)
+				return documentVector;
+
+			dominoView = db.getView(viewName);
 			
 			if (dominoView == null) {
 				logDebug("Unable to open view " + dominoDbName + '/' + viewName);
@@ -229,7 +720,7 @@ public abstract class JAddinThread extends NotesThread {
 			
 			while (dominoViewEntry != null) {
 				
-				documentVector.add(dominoViewEntry.getDocument());
+				documentVector.add(trackHandle(dominoViewEntry.getDocument()));
 				
 				dominoViewEntryNext = dominoViewEntryCollection.getNextEntry();
 
@@ -247,16 +738,69 @@ public abstract class JAddinThread extends NotesThread {
 			dbRecycleObjects(dominoViewEntry, dominoViewEntryCollection, dominoView);
 			
 			// Recycle already read Domino documents and clear Vector
-			for (Document doc : documentVector)
-				dbRecycleObjects(doc);
+			dbRecycleObjects(documentVector);
 
 			documentVector.removeAllElements();
 			
-			gDBLastErrorMessage = e.getMessage();
+			gDBLastErrorMessage.set(e.getMessage());
+			failed = true;
 			return (documentVector);
+
+		} finally {
+			releaseCircuitBreaker(circuitBreaker, startTime, failed);
 		}
 	}
 	
+	/**
+	 * Get the names of all servers of a Domino cluster from the Domino directory (names.nsf). The members of a cluster
+	 * are cached for 10 minutes.
+	 *
+	 * @param	clusterName	Name of the cluster
+	 * @return	Server names (empty if none found or error)
+	 */
+	public final String[] dbGetClusterServers(String clusterName) {
+
+		// Check arguments
+		if ((clusterName == null) || (clusterName.length() == 0))
+			return (new String[0]);
+
+		// Check the cache
+		DbClusterMembers clusterMembers = gClusterMembers.get(clusterName.toLowerCase());
+
+		if ((clusterMembers != null) && (System.currentTimeMillis() - clusterMembers.gLoadTime < CLUSTER_CACHE_MS))
+			return (clusterMembers.gServers.clone());
+
+		Database		dominoDirectory	= dbOpen("names.nsf");
+		Vector<String>	serverNames		= new Vector<String>();
+
+		if (dominoDirectory == null) {
+			logDebug("Unable to open the Domino directory names.nsf");
+			return (new String[0]);
+		}
+
+		// Read the server name and cluster name from all server documents
+		DbRecordMapping<String[]> serverMapping = DbRecordMapping.ofItems(values -> new String[] {
+				Objects.toString(DbRecordMapping.firstValue(values[0]), null),
+				Objects.toString(DbRecordMapping.firstValue(values[1]), null) },
+				"ServerName", "ClusterName");
+
+		dbMapView(dominoDirectory, "($Servers)", null, serverMapping, server -> {
+			if ((server[0] != null) && clusterName.equalsIgnoreCase(server[1]))
+				serverNames.add(server[0]);
+		});
+
+		dbRecycleObjects(dominoDirectory);
+
+		logDebug("Cluster " + clusterName + " servers: " + serverNames);
+
+		String[] servers = serverNames.toArray(new String[serverNames.size()]);
+
+		if (servers.length > 0)
+			gClusterMembers.put(clusterName.toLowerCase(), new DbClusterMembers(servers.clone()));
+
+		return (servers);
+	}
+
 	/**
 	 * Get item in Domino document.
 	 * 
@@ -267,7 +811,7 @@ public abstract class JAddinThread extends NotesThread {
 	public final String dbGetDocumentItem(Document document, String itemName) {
 		
 		// Initialize
-		gDBLastErrorMessage = null;
+		gDBLastErrorMessage.remove();
 
 		// Check arguments
 		if ((document == null) || !(document instanceof Document)) 
@@ -290,682 +834,6263 @@ public abstract class JAddinThread extends NotesThread {
 			
 		} catch (Exception e) {
 			logDebug("Unable to read document item: " + e.getMessage());
-			gDBLastErrorMessage = e.getMessage();
+			gDBLastErrorMessage.set(e.getMessage());
 			return null;
 		}
 	}
 
 	/**
-	 * Return last error message from the dbXXXX methods.
+	 * Get numeric item in Domino document without converting it to a string.
 	 *
-	 * @return String	Error message
+	 * @param	document		Domino document
+	 * @param	itemName		Domino item name
+	 * @param	defaultValue	Value returned if error
+	 * @return	Item value (0 if the item does not exist) or default value if error
 	 */
-	public final String dbGetLastErrorMessage() {
-		return (gDBLastErrorMessage);
+	public final double dbGetDocumentItemDouble(Document document, String itemName, double defaultValue) {
+
+		// Initialize
+		gDBLastErrorMessage.remove();
+
+		// Check arguments
+		if ((document == null) || !(document instanceof Document))
+			return defaultValue;
+
+		if ((itemName == null) || (itemName.length() == 0))
+			return defaultValue;
+
+		try {
+			return (document.getItemValueDouble(itemName));
+		} catch (Exception e) {
+			logDebug("Unable to read document item: " + e.getMessage());
+			gDBLastErrorMessage.set(e.getMessage());
+			return defaultValue;
+		}
 	}
-	
+
 	/**
-	 * Return the Domino session object.
-	 * 
-	 * @return	Session		Domino session object
+	 * Get date/time item in Domino document as milliseconds since the epoch (1970-01-01T00:00:00Z).
+	 *
+	 * @param	document		Domino document
+	 * @param	itemName		Domino item name
+	 * @param	defaultValue	Value returned if the item is empty or error
+	 * @return	First item value in milliseconds since the epoch or default value if empty or error
 	 */
-	public final lotus.domino.Session dbGetSession() {
-		return gDominoSession;
+	public final long dbGetDocumentItemEpochMillis(Document document, String itemName, long defaultValue) {
+
+		// Initialize
+		gDBLastErrorMessage.remove();
+
+		// Check arguments
+		if ((document == null) || !(document instanceof Document))
+			return defaultValue;
+
+		if ((itemName == null) || (itemName.length() == 0))
+			return defaultValue;
+
+		Vector<?> itemValue = null;
+
+		try {
+			itemValue = document.getItemValueDateTimeArray(itemName);
+
+			// Return default value if empty item or no date/time (e.g. date range)
+			if ((itemValue == null) || itemValue.isEmpty() || !(itemValue.get(0) instanceof DateTime)) {
+				dbRecycleObjects(itemValue);
+				return defaultValue;
+			}
+
+			long epochMillis = ((DateTime) itemValue.get(0)).toJavaDate().getTime();
+			dbRecycleObjects(itemValue);
+			return epochMillis;
+
+		} catch (Exception e) {
+			logDebug("Unable to read document item: " + e.getMessage());
+			gDBLastErrorMessage.set(e.getMessage());
+			dbRecycleObjects(itemValue);
+			return defaultValue;
+		}
 	}
 
 	/**
-	 * Get a single Domino document based on the passed key.
-	 * 
-	 * @param	db			Domino database
-	 * @param	viewName	Domino view name
-	 * @param	key			Lookup key 
-	 * @return	Domino document (must use <code>dbRecylceObjects()</code>) or null if error
+	 * Get integer item in Domino document without converting it to a string.
+	 *
+	 * @param	document		Domino document
+	 * @param	itemName		Domino item name
+	 * @param	defaultValue	Value returned if error
+	 * @return	Item value (0 if the item does not exist) or default value if error
 	 */
-	public final Document dbGetSingleDocumentByKey(Database db, String viewName, String key) {
+	public final int dbGetDocumentItemInt(Document document, String itemName, int defaultValue) {
 
 		// Initialize
-		gDBLastErrorMessage = null;
+		gDBLastErrorMessage.remove();
 
 		// Check arguments
-		if ((db == null) || !(db instanceof Database)) 
-			return null;
-		
-		if (viewName == null) 
-			return null;
-		
-		// Check if database is open
-		if (!isDbOpen(db))
-			return null;
-		
-		View		dominoView		= null;
-		Document	dominoDocument	= null;
-		String		dominoDbName	= null;
-		
-		try {
-			dominoDbName = db.getFilePath();
-			dominoView	 = db.getView(viewName);
-			
-			if (dominoView == null) {
-				logDebug("Unable to open view " + dominoDbName + '/' + viewName);
-				return null;
-			}
-			
-			// Get the first document matching the key
-			dominoDocument = dominoView.getDocumentByKey(key, true);
-			
-			if (dominoDocument == null) {
-				logDebug("View " + dominoDbName + '/' + viewName + " has no documents matching key " + key);
-				dbRecycleObjects(dominoView);
-				return null;
-			}
+		if ((document == null) || !(document instanceof Document))
+			return defaultValue;
 
-			dbRecycleObjects(dominoView);
-			return dominoDocument;
-			
+		if ((itemName == null) || (itemName.length() == 0))
+			return defaultValue;
+
+		try {
+			return (document.getItemValueInteger(itemName));
 		} catch (Exception e) {
-			logDebug("Unable to read view " + dominoDbName + '/' + viewName + ": " + e.getMessage());
-			dbRecycleObjects(dominoView);
-			gDBLastErrorMessage = e.getMessage();
-			return null;
+			logDebug("Unable to read document item: " + e.getMessage());
+			gDBLastErrorMessage.set(e.getMessage());
+			return defaultValue;
 		}
 	}
 
 	/**
-	 * Open the Domino database.
-	 * 
-	 * @param	dbName	Database name with path
-	 * @return	Domino database object (must use <code>dbRecycleObject()</code> or null for errors 
+	 * Get text item in Domino document.
+	 *
+	 * @param	document	Domino document
+	 * @param	itemName	Domino item name
+	 * @return	First item value (empty if the item does not exist) or null if error
 	 */
-	public final Database dbOpen(String dbName) {
-		
+	public final String dbGetDocumentItemString(Document document, String itemName) {
+
 		// Initialize
-		gDBLastErrorMessage = null;
-		
-		// Check argument
-		if ((dbName == null) || (dbName.length() == 0))
+		gDBLastErrorMessage.remove();
+
+		// Check arguments
+		if ((document == null) || !(document instanceof Document))
+			return null;
+
+		if ((itemName == null) || (itemName.length() == 0))
 			return null;
-		
-		Database db = null;
 
 		try {
-			// Open Domino database
-			Session session = dbGetSession();
-			
-			if (session == null) {
-				return null;
-			}
-			
-			db = session.getDatabase(null, dbName);
-			
-			// Return null if any error
-			if (db == null)
-				return null;
-
-			if (!db.isOpen()) {
-				dbRecycleObjects(db);
-				return null;
-			}
-			
+			return (document.getItemValueString(itemName));
 		} catch (Exception e) {
-			logDebug("Domino database " + dbName + " open failed: " + e.getMessage());
-			gDBLastErrorMessage = e.getMessage();
-			dbRecycleObjects(db);
+			logDebug("Unable to read document item: " + e.getMessage());
+			gDBLastErrorMessage.set(e.getMessage());
 			return null;
 		}
-		
-		// Return database object
-		return (db);
 	}
-	
+
 	/**
-	 * Recycle Domino object(s).
-	 * 
-	 * @param	dominoObjects... Domino object(s) to be recycled (supports arrays and Vectors)
-	 * @return	Indicator (Success or failure)
+	 * Get all values of a numeric item in Domino document. The values are read thru the <code>Vector</code> of
+	 * <code>getItemValue()</code>, use <code>dbGetDocumentItemDouble()</code> to read a single value without it.
+	 *
+	 * @param	document	Domino document
+	 * @param	itemName	Domino item name
+	 * @param	values		Array filled with the item values (NaN for values which are not numbers, values exceeding the
+	 * 						array length are ignored)
+	 * @return	Number of values in the item (may be greater than the array length) or -1 if error
 	 */
-	public final boolean dbRecycleObjects(Object... dominoObjects) {
-	
+	public final int dbGetDocumentItemValues(Document document, String itemName, double[] values) {
+
 		// Initialize
-		gDBLastErrorMessage = null;
+		gDBLastErrorMessage.remove();
 
-		boolean returnFlag = true;
-		
-		// Call the recycle() method for each passed Domino object to free the allocated non-Java memory
-		for (Object object : dominoObjects) {
-			
-			if (object != null) {
-				
-				// Recursively call this method for arrays or vectors
-				if (object.getClass().isArray()) {
-					Object[] objectArray = (Object[]) object;
+		// Check arguments
+		if ((document == null) || !(document instanceof Document))
+			return -1;
 
-					for (Object innerObject : objectArray)
-						dbRecycleObjects(innerObject);
-				}
-				
-				if (object instanceof Vector) {
-					Vector<?> objectVector = (Vector<?>) object;
-					for (Object innerObject : objectVector)
-						dbRecycleObjects(innerObject);
-				}
-				
-				// Recycle the Domino object
-				if (object instanceof Base) {
-					try {
-						((Base) object).recycle();
-					} catch (NotesException e) {
-						logMessage("Unable to recycle Domino object: " + e.text);
-						gDBLastErrorMessage = e.text;
-						returnFlag = false;
-					}
-				}
+		if ((itemName == null) || (itemName.length() == 0) || (values == null))
+			return -1;
+
+		try {
+			Vector<?>	itemValue	= document.getItemValue(itemName);
+			int			valueCount	= Math.min(itemValue.size(), values.length);
+
+			for (int index = 0; index < valueCount; index++) {
+				Object value = itemValue.get(index);
+				values[index] = (value instanceof Number) ? ((Number) value).doubleValue() : Double.NaN;
 			}
+
+			// Recycle date/time values
+			dbRecycleObjects(itemValue);
+			return (itemValue.size());
+
+		} catch (Exception e) {
+			logDebug("Unable to read document item: " + e.getMessage());
+			gDBLastErrorMessage.set(e.getMessage());
+			return -1;
 		}
-		
-		// Return indicator
-		return (returnFlag);
 	}
-	
+
 	/**
-	 * Save the Domino document.
-	 * 
+	 * Get all values of an item in Domino document converted to strings.
+	 *
 	 * @param	document	Domino document
-	 * @return	Indicator (success or failure)
+	 * @param	itemName	Domino item name
+	 * @param	values		Array filled with the item values (values exceeding the array length are ignored)
+	 * @return	Number of values in the item (may be greater than the array length) or -1 if error
 	 */
-	public final boolean dbSaveDocument(Document document) {
+	public final int dbGetDocumentItemValues(Document document, String itemName, String[] values) {
 
 		// Initialize
-		gDBLastErrorMessage = null;
+		gDBLastErrorMessage.remove();
 
 		// Check arguments
-		if ((document == null) || !(document instanceof Document)) 
-			return false;
-				
+		if ((document == null) || !(document instanceof Document))
+			return -1;
+
+		if ((itemName == null) || (itemName.length() == 0) || (values == null))
+			return -1;
+
 		try {
-			return document.save(true);
+			Vector<?>	itemValue	= document.getItemValue(itemName);
+			int			valueCount	= Math.min(itemValue.size(), values.length);
+
+			for (int index = 0; index < valueCount; index++)
+				values[index] = String.valueOf(itemValue.get(index));
+
+			// Recycle date/time values
+			dbRecycleObjects(itemValue);
+			return (itemValue.size());
+
 		} catch (Exception e) {
-			logDebug("Unable to save Domino document: " + e.getMessage());
-			gDBLastErrorMessage = e.getMessage();
-			return false;
+			logDebug("Unable to read document item: " + e.getMessage());
+			gDBLastErrorMessage.set(e.getMessage());
+			return -1;
 		}
 	}
-	
+
 	/**
-	 * Create and send a message. If the message delivery fails, a message will be written to the Domino console.
-	 * 
-	 * @param	principal	Principal name or null
-	 * @param	from		Senders name
-	 * @param	to			Recipient name
-	 * @param	subject		Subject
-	 * @param	contentType	Content type of body, e.g. "text/html"
-	 * @param	body		Body data
-	 * @return	Success or failure indicator 			 
+	 * Return last error message from the dbXXXX methods. The error message is kept per thread, so concurrent calls
+	 * from different threads do not overwrite each other. The method <code>dbRecycleObjects()</code> does not reset it.
+	 *
+	 * @return String	Error message of the last dbXXXX method called by the current thread
 	 */
-	public final boolean dbSendMessage(String principal, String from, String to, String subject, String contentType, byte[] body) {
-		return (dbSendMessage(principal, from, null, to, null, null, subject, contentType, body));
+	public final String dbGetLastErrorMessage() {
+		return (gDBLastErrorMessage.get());
 	}
-	
+
 	/**
-	 * Create and send a message. If the message delivery fails, a message will be written to the Domino console.
-	 * 
-	 * @param	principal	Principal name or null
-	 * @param	from		Senders name
-	 * @param	replyTo		Reply address or null
-	 * @param	to			Recipient name
-	 * @param	cc			Copy recipient or null
-	 * @param	bcc			Blind carbon copy recipient or null
-	 * @param	subject		Subject
-	 * @param	contentType	Content type of body, e.g. "text/html"
-	 * @param	body		Body data
-	 * @return	Success or failure indicator 			 
+	 * Get all documents created, modified or deleted since the last committed checkpoint. If no checkpoint exists, all
+	 * documents are returned. Deleted documents are returned as deletion stubs (<code>Document.isDeleted()</code> is true).
+	 * The new checkpoint is only persisted after calling <code>dbCommitCheckpoint()</code>.
+	 *
+	 * @param	db				Domino database
+	 * @param	checkpointName	Name of the checkpoint, e.g. the purpose of the processing
+	 * @return	Documents (must use <code>dbRecycleObjects()</code>) or empty Vector if error or no changes
 	 */
-	public final boolean dbSendMessage(String principal, String from, String replyTo, String to, String cc, String bcc, String subject, String contentType, byte[] body) {
-		
+	public final Vector<Document> dbGetModifiedDocuments(Database db, String checkpointName) {
+
 		// Initialize
-		gDBLastErrorMessage = null;
+		gDBLastErrorMessage.remove();
 
-		// Check arguments and set defaults
-		if ((principal != null) && (principal.length() == 0))
-			principal = null;
-		
-		if ((from == null) || (from.length() == 0)) 
-			return false;
-		
-		if ((to == null) || (to.length() == 0)) 
-			return false;
+		Vector<Document> documentVector	= new Vector<Document>(0, 1);
 
-		if ((cc != null) && (cc.length() == 0))
-			cc = null;
+		// Check arguments
+		if ((db == null) || !(db instanceof Database))
+			return documentVector;
 
-		if ((bcc != null) && (bcc.length() == 0))
-			bcc = null;
-		
-		if ((subject != null) && (subject.length() == 0))
-			subject = "(No subject)";
-		
-		if ((contentType == null) || (contentType.length() == 0))
-			contentType = "Text/Plain";
+		if ((checkpointName == null) || (checkpointName.length() == 0))
+			return documentVector;
 
-		if ((body == null) || (body.length == 0)) {
-			body = "(No content)".getBytes();
-		}
-		
-		// Variables
-		Stream			dominoStream		= null;
-		Database		dominoMailBox		= null;
-		Document		mailDocument		= null;
-		MIMEEntity		dominoMIMEEntity	= null;
-		DateTime		dominoDateTime		= null;
-	
-		logDebug("-- dbSendMessage()");
-		
-		// Open router mail box mail.box or mail1.box
-		dominoMailBox = dbOpen("mail.box");
-		
-		if (dominoMailBox == null) {
-			dominoMailBox = dbOpen("mail1.box");
-			
-			if (dominoMailBox == null) {
-				logMessage("Unable to open Domino router mail box");
-				return false;
-			}
-		}
+		// Check if database is open
+		if (!isDbOpen(db))
+			return documentVector;
+
+		DocumentCollection	dominoDocumentCollection	= null;
+		DateTime			dominoSinceTime				= null;
+		DateTime			dominoUntilTime				= null;
+		Document			dominoDocument				= null;
+		String				dominoDbName				= null;
+		DbCircuitBreaker	circuitBreaker				= null;
+		long				startTime					= System.nanoTime();
+		boolean				failed						= false;
 
-		logDebug("Sending message: From " + from + " to " + to);
-		
-		boolean dominoMIMEState = false; 
-				
 		try {
-			// Disable MIME conversion
-			dominoMIMEState = dbGetSession().isConvertMime();
-			dbGetSession().setConvertMime(false);
-			
-			// Get Domino domain name
-			String dominoDomain = dbGetSession().getEnvironmentString("Domain", true);
-			
-			// Create mail message
-			mailDocument = dominoMailBox.createDocument();
-			
-			// Set required fields
-			mailDocument.replaceItemValue("Form", "Memo");
-			
-			if (principal != null)
-				mailDocument.replaceItemValue("Principal", '\"' + principal + "\"<" + from + ">@" + dominoDomain);
-			else
-				mailDocument.replaceItemValue("Principal", from + '@' + dominoDomain);
-
-			mailDocument.replaceItemValue("From", from);
-			mailDocument.replaceItemValue("INETFrom", from);
-			mailDocument.replaceItemValue("Sender", from);
-			mailDocument.replaceItemValue("SMTPOriginator", from);
-			mailDocument.replaceItemValue("SendTo", to + '@' + dominoDomain);
-			mailDocument.replaceItemValue("Recipients", to + '@' + dominoDomain);
-			
-			dominoDateTime = dbGetSession().createDateTime("Today");
-		    dominoDateTime.setNow();
-			mailDocument.replaceItemValue("PostedDate", dominoDateTime);
-	
-			if (replyTo != null)
-				mailDocument.replaceItemValue("ReplyTo", replyTo);
-			
-			if (cc != null)
-				mailDocument.replaceItemValue("CopyTo", cc);
-			
-			if (bcc != null)
-				mailDocument.replaceItemValue("BlindCopyTo", bcc);
-	
-			mailDocument.replaceItemValue("Subject", subject);
+			dominoDbName = db.getFilePath();
 
-			// Set MIME body of message
-			dominoStream = dbGetSession().createStream();
-			dominoStream.write(body);			
-			dominoMIMEEntity = mailDocument.createMIMEEntity("Body");
-			dominoMIMEEntity.setContentFromBytes(dominoStream, contentType, MIMEEntity.ENC_NONE);
-			dominoStream.truncate();
-			dominoStream.close();
-			
-			// Store the document in the router mail box for further delivery
-			mailDocument.save(true);
+			// Fail fast if the database is overloaded or unavailable
+			circuitBreaker = acquireCircuitBreaker(dominoDbName);
 
-			// Reset MIME conversion state
-			dbGetSession().setConvertMime(dominoMIMEState);
-			
-			logDebug("Document successfully created in router mail box for " + to);
-			dbRecycleObjects(dominoDateTime, dominoMIMEEntity, dominoStream, mailDocument, dominoMailBox);
-			return true;
-			
-		} catch (NotesException e) {
-			logMessage("Unable to create mail document in router mail box: " + e.text);
-			gDBLastErrorMessage = e.getMessage();
-			dbRecycleObjects(dominoDateTime, dominoMIMEEntity, dominoStream, mailDocument, dominoMailBox);
-			return false;
-		}
-	}
-	
-	/**
-	 * Set item in Domino document.
-	 * 
-	 * @param	document	Domino document
-	 * @param	itemName	Domino item name
-	 * @param	data		Item to be set
-	 * @return	Success or error
-	 */
-	public final boolean dbSetDocumentItem(Document document, String itemName, Object data) {
+			if (circuitBreaker == null)
+				return documentVector;
 
-		// Initialize
-		gDBLastErrorMessage = null;
+			// Get the last committed checkpoint
+			String checkpointKey	= db.getReplicaID() + '.' + checkpointName;
+			String sinceTime		= loadCheckpoints().getProperty(checkpointKey);
 
-		// Check arguments
-		if ((document == null) || !(document instanceof Document)) 
-			return false;
+			if (sinceTime != null) {
+				dominoSinceTime = dbGetSession().createDateTime(new Date(Long.parseLong(sinceTime)));
+				logDebug("Reading changes of " + dominoDbName + " since " + JAddin.toISODateUTC(new Date(Long.parseLong(sinceTime))));
+			} else {
+				logDebug("No checkpoint " + checkpointName + " found for " + dominoDbName + ", reading all documents");
+			}
+
+			dominoDocumentCollection = db.getModifiedDocuments(dominoSinceTime, Database.DBMOD_DOC_DATA);
+
+			// Get the end time of this search which becomes the next checkpoint
+			dominoUntilTime = dominoDocumentCollection.getUntilTime();
+			String untilTime = String.valueOf(dominoUntilTime.toJavaDate().getTime());
+
+			logDebug("Database " + dominoDbName + " modified documents: " + dominoDocumentCollection.getCount());
+
+			// Read thru all documents
+			dominoDocument = dominoDocumentCollection.getFirstDocument();
+
+			while (dominoDocument != null) {
+				documentVector.add(trackHandle(dominoDocument));
+				dominoDocument = dominoDocumentCollection.getNextDocument();
+			}
+
+			gPendingCheckpoints.setProperty(checkpointKey, untilTime);
+
+			// Recycle temporary Domino objects and return data
+			dbRecycleObjects(dominoUntilTime, dominoSinceTime, dominoDocumentCollection);
+			return documentVector;
 
-		if ((itemName == null) || (itemName.length() == 0)) 
-			return false;
-				
-		try {
-			document.replaceItemValue(itemName, data);				
 		} catch (Exception e) {
-			logDebug("Unable to set value in item " + itemName + ": " + e.getMessage());
-			gDBLastErrorMessage = e.getMessage();
-			return false;
+			logDebug("Unable to read modified documents of " + dominoDbName + ": " + e.getMessage());
+			dbRecycleObjects(dominoUntilTime, dominoSinceTime, dominoDocumentCollection);
+
+			// Recycle already read Domino documents and clear Vector
+			dbRecycleObjects(documentVector);
+
+			documentVector.removeAllElements();
+
+			gDBLastErrorMessage.set(e.getMessage());
+			failed = true;
+			return (documentVector);
+
+		} finally {
+			releaseCircuitBreaker(circuitBreaker, startTime, failed);
 		}
-		
-		return true;
 	}
-	
+
 	/**
-	 * AES-128 decrypt the passed buffer with the passed secret key.
+	 * Return the Domino session object. Called from a worker thread of <code>getWorkerExecutor()</code>, the session of
+	 * the worker is returned (created on first use), so all db* methods can be used in worker tasks. Called from a task
+	 * of <code>getIOExecutor()</code>, null is returned and the reason is set for <code>dbGetLastErrorMessage()</code>.
 	 * 
-	 * @param dataBuffer Clear text buffer
-	 * @param secretKey	Secret key for encryption
-	 * @return Encrypted buffer
+	 * @return	Session		Domino session object or null
 	 */
-	public final synchronized byte[] decryptAES(byte[] dataBuffer, byte[] secretKey) {
+	public final lotus.domino.Session dbGetSession() {
 
-		try {
-			
-			// MD5 hash the secret key and trim down hash to 128 bits
-			MessageDigest messageDigest = MessageDigest.getInstance("MD5");
-			messageDigest.update(secretKey);
-			byte[] secretKeyHash128Bit = Arrays.copyOf(messageDigest.digest(), 16);
-			SecretKeySpec secretKeySpec = new SecretKeySpec(secretKeyHash128Bit, "AES");
-			
-			// Create the cipher
-			Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
-			cipher.init(Cipher.DECRYPT_MODE, secretKeySpec);
+		Thread currentThread = Thread.currentThread();
 
-			// Encrypt the buffer
-			return (cipher.doFinal(dataBuffer));
-			
-		} catch (Exception e) {
-			logMessage("Unable to decrypt from AES-128 buffer: " + e.getMessage());
-			return (new byte[0]);
+		if (currentThread instanceof DbWorkerThread)
+			return (((DbWorkerThread) currentThread).getSession());
+
+		// Do not log thru the Domino API on a virtual thread
+		if (isIOThread(currentThread)) {
+			gDBLastErrorMessage.set("Domino calls are not allowed in tasks of getIOExecutor(), use getWorkerExecutor() instead");
+			return null;
 		}
+
+		return gDominoSession;
 	}
 
 	/**
-	 * Delete the Domino statistics show in response to 'Show Stat' command.
+	 * Get a single Domino document based on the passed key.
 	 * 
-	 * @param statsName		Name of statistics
+	 * @param	db			Domino database
+	 * @param	viewName	Domino view name
+	 * @param	key			Lookup key 
+	 * @return	Domino document (must use <code>dbRecylceObjects()</code>) or null if error
 	 */
-	public final void deleteDominoStatistic(String statsName) {
-		if (isJAddinAlive()) {
-			gJAddinMain.deleteDominoStatistic(gUserAddinName, statsName);
+	public final Document dbGetSingleDocumentByKey(Database db, String viewName, String key) {
+
+		// Initialize
+		gDBLastErrorMessage.remove();
+
+		// Check arguments
+		if ((db == null) || !(db instanceof Database)) 
+			return null;
+		
+		if (viewName == null) 
+			return null;
+		
+		// Check if database is open
+		if (!isDbOpen(db))
+			return null;
+		
+		View				dominoView		= null;
+		Document			dominoDocument	= null;
+		String				dominoDbName	= null;
+		DbCircuitBreaker	circuitBreaker	= null;
+		long				startTime		= System.nanoTime();
+		boolean				failed			= false;
+		
+		try {
+			dominoDbName = db.getFilePath();
+
+			// Fail fast if the database is overloaded or unavailable
+			circuitBreaker = acquireCircuitBreaker(dominoDbName);
+
+			if (circuitBreaker == null)
+				return null;
+
+			dominoView = db.getView(viewName);
+			
+			if (dominoView == null) {
+				logDebug("Unable to open view " + dominoDbName + '/' + viewName);
+				return null;
+			}
+			
+			// Get the first document matching the key
+			dominoDocument = dominoView.getDocumentByKey(key, true);
+			
+			if (dominoDocument == null) {
+				logDebug("View " + dominoDbName + '/' + viewName + " has no documents matching key " + key);
+				dbRecycleObjects(dominoView);
+				return null;
+			}
+
+			dbRecycleObjects(dominoView);
+			return (trackHandle(dominoDocument));
+			
+		} catch (Exception e) {
+			logDebug("Unable to read view " + dominoDbName + '/' + viewName + ": " + e.getMessage());
+			dbRecycleObjects(dominoView);
+			gDBLastErrorMessage.set(e.getMessage());
+			failed = true;
+			return null;
+
+		} finally {
+			releaseCircuitBreaker(circuitBreaker, startTime, failed);
 		}
 	}
-	
+
 	/**
-	 * AES-128 encrypt the passed buffer with the passed secret key.
+	 * Look up the same view on several replicas in parallel and return the first complete answer. Each replica is read by
+	 * a worker thread of <code>getWorkerExecutor()</code> with the session of the worker, so a slow or unavailable
+	 * server does not delay the result. The lookups still running when the answer is returned are cancelled.
+	 *
+	 * @param	servers			Server names (null or empty string for the local server)
+	 * @param	dbName			Database name with path
+	 * @param	viewName		Domino view name
+	 * @param	key				Lookup key
+	 * @param	timeoutMillis	Maximum time to wait for an answer
+	 * @return	Column values of all matching view entries (date/time values converted to java.util.Date) or null if error or timeout
+	 */
+	public final Vector<Vector<Object>> dbLookupFanOut(String[] servers, String dbName, String viewName, String key, long timeoutMillis) {
+
+		// Initialize
+		gDBLastErrorMessage.remove();
+
+		// Check arguments
+		if ((servers == null) || (servers.length == 0))
+			return null;
+
+		if ((dbName == null) || (dbName.length() == 0) || (viewName == null) || (key == null))
+			return null;
+
+		ExecutorService workerExecutor = getWorkerExecutor();
+
+		if (workerExecutor == null) {
+			gDBLastErrorMessage.set("Add-in terminates");
+			return null;
+		}
+
+		BlockingQueue<Object[]>	answerQueue	= new LinkedBlockingQueue<Object[]>();
+		List<Future<?>>			lookups		= new ArrayList<Future<?>>(servers.length);
+
+		// Start a lookup task for each server
+		try {
+			for (String server : servers) {
+
+				lookups.add(workerExecutor.submit(() -> {
+
+					Database				dominoDb					= null;
+					View					dominoView					= null;
+					ViewEntryCollection		dominoViewEntryCollection	= null;
+					ViewEntry				dominoViewEntry				= null;
+					ViewEntry				dominoViewEntryNext			= null;
+					Vector<Vector<Object>>	entryVector					= null;
+					long					startTime					= System.nanoTime();
+
+					try {
+						dominoDb = dbGetSession().getDatabase(server, dbName, false);
+
+						if ((dominoDb != null) && (dominoDb.isOpen() || dominoDb.open()))
+							dominoView = dominoDb.getView(viewName);
+
+						if (dominoView != null) {
+							dominoViewEntryCollection	= dominoView.getAllEntriesByKey(key);
+							entryVector					= new Vector<Vector<Object>>(dominoViewEntryCollection.getCount());
+							dominoViewEntry				= dominoViewEntryCollection.getFirstEntry();
+
+							while ((dominoViewEntry != null) && !Thread.currentThread().isInterrupted()) {
+								Vector<Object> columnValues = new Vector<Object>();
+
+								for (Object columnValue : dominoViewEntry.getColumnValues())
+									columnValues.add(toJavaValue(columnValue));
+
+								entryVector.add(columnValues);
+
+								dominoViewEntryNext = dominoViewEntryCollection.getNextEntry();
+								dominoViewEntry.recycle();
+								dominoViewEntry = dominoViewEntryNext;
+							}
+
+							// A cancelled lookup is incomplete and does not count as a success
+							if (Thread.currentThread().isInterrupted())
+								entryVector = null;
+							else
+								getServerHealth(server).recordSuccess(System.nanoTime() - startTime);
+						} else {
+							logDebug("Unable to open view " + server + "!!" + dbName + '/' + viewName);
+							getServerHealth(server).recordFailure();
+						}
+
+					} catch (Exception e) {
+						logDebug("Lookup on " + server + "!!" + dbName + " failed: " + e.getMessage());
+						getServerHealth(server).recordFailure();
+						entryVector = null;
+					}
+
+					answerQueue.add(new Object[] { server, entryVector });
+					dbRecycleObjects(dominoViewEntry, dominoViewEntryCollection, dominoView, dominoDb);
+				}));
+			}
+
+			// Wait for the first complete answer
+			long deadline = System.currentTimeMillis() + timeoutMillis;
+
+			for (int answerCount = 0; answerCount < servers.length; answerCount++) {
+
+				Object[] answer = answerQueue.poll(Math.max(0L, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+
+				if (answer == null)
+					break;
+
+				if (answer[1] != null) {
+					@SuppressWarnings("unchecked")
+					Vector<Vector<Object>> entryVector = (Vector<Vector<Object>>) answer[1];
+					logDebug("First answer received from " + answer[0] + " with " + entryVector.size() + " entries");
+					return (entryVector);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (RejectedExecutionException e) {
+			logDebug("Lookup not started, add-in terminates");
+		} finally {
+			// Cancel the lookups not yet completed
+			for (Future<?> lookup : lookups)
+				lookup.cancel(true);
+		}
+
+		logDebug("No replica of " + dbName + " answered within " + timeoutMillis + " ms");
+		gDBLastErrorMessage.set("No replica answered");
+		return null;
+	}
+
+	/**
+	 * Send a personalised message to every recipient returned by the iterator (see <code>DbMailTemplate</code>). The
+	 * messages are rendered in parallel worker threads and queued for the background mail submitter, which deposits
+	 * them in batches. The method returns when all messages are deposited or the timeout has elapsed (the timeout
+	 * covers reading, rendering, queuing and depositing).
+	 *
+	 * @param	template		Compiled template
+	 * @param	recipients		Field values of the recipients (the Domino objects must be read by the caller thread)
+	 * @param	threadCount		Number of rendering threads
+	 * @param	timeoutMillis	Maximum time for the whole mail merge
+	 * @return	Counts and per-phase timings
+	 */
+	public final DbMailMergeResult dbMailMerge(DbMailTemplate template, Iterator<? extends Map<String, ?>> recipients, int threadCount, long timeoutMillis) {
+
+		// Initialize
+		gDBLastErrorMessage.remove();
+
+		if ((template == null) || (recipients == null))
+			return null;
+
+		return (mailMerge(template, recipient -> recipients.forEachRemaining(recipient), threadCount, timeoutMillis));
+	}
+
+	/**
+	 * Send a personalised message to every document of a view (see <code>dbMailMerge(DbMailTemplate, Iterator, int, long)</code>).
+	 * The template fields are read from the document items with the same name.
+	 *
+	 * @param	template		Compiled template
+	 * @param	db				Domino database
+	 * @param	viewName		Domino view name
+	 * @param	key				Key for lookup or null to read all documents
+	 * @param	threadCount		Number of rendering threads
+	 * @param	timeoutMillis	Maximum time for the whole mail merge
+	 * @return	Counts and per-phase timings (with the error message if the view could not be read completely)
+	 */
+	public final DbMailMergeResult dbMailMerge(DbMailTemplate template, Database db, String viewName, String key, int threadCount, long timeoutMillis) {
+
+		// Initialize
+		gDBLastErrorMessage.remove();
+
+		if (template == null)
+			return null;
+
+		String[]								fieldNames	= template.getFieldNames();
+		DbRecordMapping<Map<String, Object>>	mapping		= DbRecordMapping.ofItems(values -> {
+			Map<String, Object> fieldValues = new HashMap<String, Object>();
+
+			for (int index = 0; index < fieldNames.length; index++)
+				fieldValues.put(fieldNames[index], values[index]);
+
+			return (fieldValues);
+		}, fieldNames);
+
+		DbMailMergeResult result = mailMerge(template, recipient -> {
+			if (dbMapView(db, viewName, key, mapping, recipient) < 0)
+				throw new IllegalStateException("Unable to read view " + viewName + ": " + dbGetLastErrorMessage());
+		}, threadCount, timeoutMillis);
+
+		return (result);
+	}
+
+	/**
+	 * Map a Domino document to a Java object. The items declared in the mapping are read and passed to the factory of
+	 * the mapping. Date/time values are converted to <code>java.util.Date</code>.
+	 *
+	 * @param	document	Domino document
+	 * @param	mapping		Mapping created with <code>DbRecordMapping.ofItems()</code>
+	 * @return	Java object or null if error
+	 */
+	public final <T> T dbMapDocument(Document document, DbRecordMapping<T> mapping) {
+
+		// Initialize
+		gDBLastErrorMessage.remove();
+
+		// Check arguments
+		if ((document == null) || !(document instanceof Document))
+			return null;
+
+		if ((mapping == null) || (mapping.gItemNames == null))
+			return null;
+
+		try {
+			return (mapping.gFactory.apply(getRecordValues(document, mapping)));
+		} catch (Exception e) {
+			logDebug("Unable to map document: " + e.getMessage());
+			gDBLastErrorMessage.set(e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Map all documents or documents matching a key from a view to Java objects and pass them one by one to the
+	 * consumer. The view entries are read sequentially and recycled after mapping, so the memory used does not
+	 * depend on the size of the view. Mappings created with <code>DbRecordMapping.ofColumns()</code> read all values
+	 * of an entry with a single call without opening the document.
+	 *
+	 * @param	db			Domino database
+	 * @param	viewName	Domino view name
+	 * @param	key			Key for lookup or null to read all documents
+	 * @param	mapping		Mapping of the items or view columns
+	 * @param	consumer	Consumer called for every mapped object
+	 * @return	Number of mapped objects or -1 if error
+	 */
+	public final <T> int dbMapView(Database db, String viewName, String key, DbRecordMapping<T> mapping, Consumer<? super T> consumer) {
+
+		// Initialize
+		gDBLastErrorMessage.remove();
+
+		// Check arguments
+		if ((db == null) || !(db instanceof Database))
+			return -1;
+
+		if ((viewName == null) || (mapping == null) || (consumer == null))
+			return -1;
+
+		// Check if database is open
+		if (!isDbOpen(db))
+			return -1;
+
+		View				dominoView					= null;
+		ViewEntryCollection	dominoViewEntryCollection	= null;
+		ViewEntry			dominoViewEntry				= null;
+		ViewEntry			dominoViewEntryNext			= null;
+		Document			dominoDocument				= null;
+		String				dominoDbName				= null;
+		int					recordCount					= 0;
+		DbCircuitBreaker	circuitBreaker				= null;
+		long				startTime					= System.nanoTime();
+		long				consumerNanos				= 0;
+		boolean				failed						= false;
+
+		try {
+			dominoDbName = db.getFilePath();
+
+			// Fail fast if the database is overloaded or unavailable
+			circuitBreaker = acquireCircuitBreaker(dominoDbName);
+
+			if (circuitBreaker == null)
+				return -1;
+
+			dominoView = db.getView(viewName);
+
+			if (dominoView == null) {
+				logDebug("Unable to open view " + dominoDbName + '/' + viewName);
+				return -1;
+			}
+
+			// Do not refresh the view while reading thru it
+			dominoView.setAutoUpdate(false);
+
+			// Get all view entries or entries matching a key
+			if (key == null)
+				dominoViewEntryCollection = dominoView.getAllEntries();
+			else
+				dominoViewEntryCollection = dominoView.getAllEntriesByKey(key);
+
+			if (dominoViewEntryCollection == null) {
+				dbRecycleObjects(dominoView);
+				return 0;
+			}
+
+			// Read thru all view entries and map the entry or the document
+			dominoViewEntry = dominoViewEntryCollection.getFirstEntry();
+
+			while ((dominoViewEntry != null) && !addinInterrupted()) {
+
+				Object[] recordValues = null;
+
+				if (mapping.gColumnIndexes != null) {
+					recordValues = getRecordValues(dominoViewEntry, mapping);
+				} else {
+					dominoDocument	= dominoViewEntry.getDocument();
+					recordValues	= getRecordValues(dominoDocument, mapping);
+					dbRecycleObjects(dominoDocument);
+					dominoDocument = null;
+				}
+
+				// The time of the factory and the consumer is not part of the database latency
+				long consumerStartTime = System.nanoTime();
+				consumer.accept(mapping.gFactory.apply(recordValues));
+				consumerNanos += System.nanoTime() - consumerStartTime;
+
+				recordCount++;
+
+				dominoViewEntryNext = dominoViewEntryCollection.getNextEntry();
+
+				// Recycle previous entry
+				dbRecycleObjects(dominoViewEntry);
+				dominoViewEntry = dominoViewEntryNext;
+			}
+
+			logDebug("View " + dominoDbName + '/' + viewName + " entries mapped: " + recordCount);
+
+			// Recycle temporary Domino objects and return number of records
+			dbRecycleObjects(dominoViewEntry, dominoViewEntryCollection, dominoView);
+			return recordCount;
+
+		} catch (Exception e) {
+			logDebug("Unable to map view " + dominoDbName + '/' + viewName + ": " + e.getMessage());
+			dbRecycleObjects(dominoDocument, dominoViewEntry, dominoViewEntryCollection, dominoView);
+			gDBLastErrorMessage.set(e.getMessage());
+			failed = true;
+			return -1;
+
+		} finally {
+			releaseCircuitBreaker(circuitBreaker, startTime + consumerNanos, failed);
+		}
+	}
+
+	/**
+	 * Open the Domino database.
 	 * 
-	 * @param dataBuffer Clear text buffer
-	 * @param secretKey	Secret key for encryption
-	 * @return Encrypted buffer
+	 * @param	dbName	Database name with path
+	 * @return	Domino database object (must use <code>dbRecycleObject()</code> or null for errors 
 	 */
-	public final synchronized byte[] encryptAES(byte[] dataBuffer, byte[] secretKey) {
-				
+	public final Database dbOpen(String dbName) {
+		
+		// Initialize
+		gDBLastErrorMessage.remove();
+		
+		// Check argument
+		if ((dbName == null) || (dbName.length() == 0))
+			return null;
+		
+		// Fail fast if the database is overloaded or unavailable
+		DbCircuitBreaker circuitBreaker = acquireCircuitBreaker(dbName);
+
+		if (circuitBreaker == null)
+			return null;
+
+		Database	db			= null;
+		long		startTime	= System.nanoTime();
+		boolean		failed		= true;
+
 		try {
-			// MD5 hash the secret key and trim down hash to 128 bits
-			MessageDigest messageDigest = MessageDigest.getInstance("MD5");
-			messageDigest.update(secretKey);
-			byte[] secretKeyHash128Bit = Arrays.copyOf(messageDigest.digest(), 16);
-			SecretKeySpec secretKeySpec = new SecretKeySpec(secretKeyHash128Bit, "AES");
+			// Open Domino database
+			Session session = dbGetSession();
 			
-			// Create the cipher
-			Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
-			cipher.init(Cipher.ENCRYPT_MODE, secretKeySpec);
+			if (session == null) {
+				return null;
+			}
+			
+			db = session.getDatabase(null, dbName);
+			
+			// Return null if any error
+			if (db == null)
+				return null;
 
-			// Encrypt the buffer
-			return (cipher.doFinal(dataBuffer));
+			if (!db.isOpen()) {
+				dbRecycleObjects(db);
+				return null;
+			}
+
+			failed = false;
 			
 		} catch (Exception e) {
-			logMessage("Unable to encrypt to AES-128 buffer: " + e.getMessage());
-			return (new byte[0]);
+			logDebug("Domino database " + dbName + " open failed: " + e.getMessage());
+			gDBLastErrorMessage.set(e.getMessage());
+			dbRecycleObjects(db);
+			return null;
+
+		} finally {
+			releaseCircuitBreaker(circuitBreaker, startTime, failed);
+		}
+		
+		// Return database object
+		return (trackHandle(db));
+	}
+	
+	/**
+	 * Open the Domino database on the best server. The servers are tried in the order of their health score (measured
+	 * open latency and recent failures) and the first replica opened is returned.
+	 *
+	 * @param	servers	Server names (null or empty string for the local server)
+	 * @param	dbName	Database name with path
+	 * @return	Domino database object (must use <code>dbRecycleObjects()</code>) or null if no replica could be opened
+	 */
+	public final Database dbOpen(String[] servers, String dbName) {
+
+		// Initialize
+		gDBLastErrorMessage.remove();
+
+		// Check arguments
+		if ((servers == null) || (servers.length == 0))
+			return null;
+
+		if ((dbName == null) || (dbName.length() == 0))
+			return null;
+
+		Session session = dbGetSession();
+
+		if (session == null)
+			return null;
+
+		// Sort the servers by a snapshot of the health scores (lowest first), the scores may change while sorting
+		String[]			sortedServers	= servers.clone();
+		Map<String, Double>	serverScores	= new HashMap<String, Double>();
+
+		for (String server : sortedServers)
+			serverScores.put(server, getServerHealth(server).getScore());
+
+		Arrays.sort(sortedServers, Comparator.comparingDouble(serverScores::get));
+
+		for (String server : sortedServers) {
+
+			Database	db			= null;
+			long		startTime	= System.nanoTime();
+
+			try {
+				db = session.getDatabase(server, dbName, false);
+
+				if ((db != null) && (db.isOpen() || db.open())) {
+					getServerHealth(server).recordSuccess(System.nanoTime() - startTime);
+					logDebug("Database " + dbName + " opened on " + server + " in " + ((System.nanoTime() - startTime) / 1000000L) + " ms");
+					return (trackHandle(db));
+				}
+
+				getServerHealth(server).recordFailure();
+				dbRecycleObjects(db);
+
+			} catch (Exception e) {
+				logDebug("Domino database " + server + "!!" + dbName + " open failed: " + e.getMessage());
+				gDBLastErrorMessage.set(e.getMessage());
+				getServerHealth(server).recordFailure();
+				dbRecycleObjects(db);
+			}
+		}
+
+		logDebug("No replica of " + dbName + " could be opened");
+		return null;
+	}
+
+	/**
+	 * Open a new arena for the current thread. All Domino objects returned by the dbXXXX methods of this thread are
+	 * tracked by the arena and recycled together when the arena is closed, e.g.
+	 * <code>try (DbArena arena = dbOpenArena()) { ... }</code>. Arenas may be nested.
+	 *
+	 * @return	Arena (must be closed)
+	 */
+	public final DbArena dbOpenArena() {
+
+		DbArena arena = new DbArena(gCurrentArena.get());
+		gCurrentArena.set(arena);
+		return (arena);
+	}
+
+	/**
+	 * Open the Domino database on the best server of a cluster (see <code>dbOpen(String[], String)</code>).
+	 *
+	 * @param	clusterName	Name of the cluster
+	 * @param	dbName		Database name with path
+	 * @return	Domino database object (must use <code>dbRecycleObjects()</code>) or null if no replica could be opened
+	 */
+	public final Database dbOpenCluster(String clusterName, String dbName) {
+		return (dbOpen(dbGetClusterServers(clusterName), dbName));
+	}
+
+	/**
+	 * Queue a message for delivery by the background mail submitter. The submitter keeps the router mail box open and
+	 * deposits the queued messages in batches. If the queue is full, the caller waits up to the given time
+	 * (backpressure). Failed deliveries are written to the Domino console.
+	 *
+	 * @param	principal		Principal name or null
+	 * @param	from			Senders name
+	 * @param	replyTo			Reply address or null
+	 * @param	to				Recipient name
+	 * @param	cc				Copy recipient or null
+	 * @param	bcc				Blind carbon copy recipient or null
+	 * @param	subject			Subject
+	 * @param	contentType		Content type of body, e.g. "text/html"
+	 * @param	body			Body data
+	 * @param	timeoutMillis	Maximum time to wait if the queue is full
+	 * @return	True if the message was queued, false if the queue is full, the add-in terminates or invalid arguments
+	 */
+	public final boolean dbQueueMessage(String principal, String from, String replyTo, String to, String cc, String bcc, String subject, String contentType, byte[] body, long timeoutMillis) {
+
+		// Initialize
+		gDBLastErrorMessage.remove();
+
+		// Check arguments and set defaults
+		DbMailMessage mailMessage = newMailMessage(principal, from, replyTo, to, cc, bcc, subject, contentType, body);
+
+		if (mailMessage == null)
+			return false;
+
+		// Start the mail submitter on first use
+		if (!startMailSubmitter())
+			return false;
+
+		try {
+			if (gMailQueue.offer(mailMessage, timeoutMillis, TimeUnit.MILLISECONDS))
+				return true;
+
+			logDebug("Mail queue is full, message to " + to + " not queued");
+			gDBLastErrorMessage.set("Mail queue is full");
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		return false;
+	}
+
+	/**
+	 * Recycle Domino object(s). Collections, e.g. the documents returned by <code>dbGetAllDocuments()</code>, are
+	 * recycled in chunks with one <code>Session.recycle(Vector)</code> call per chunk.
+	 * 
+	 * @param	dominoObjects... Domino object(s) to be recycled (supports arrays, Vectors and other collections)
+	 * @return	Indicator (Success or failure)
+	 */
+	public final boolean dbRecycleObjects(Object... dominoObjects) {
+	
+		// Check arguments
+		if (dominoObjects == null)
+			return true;
+
+		boolean returnFlag = true;
+		
+		// Call the recycle() method for each passed Domino object to free the allocated non-Java memory
+		for (Object object : dominoObjects) {
+			
+			if (object != null) {
+				
+				// Recursively call this method for arrays
+				if (object.getClass().isArray()) {
+					Object[] objectArray = (Object[]) object;
+
+					for (Object innerObject : objectArray)
+						returnFlag &= dbRecycleObjects(innerObject);
+				}
+				
+				// Recycle vectors and other collections in chunks
+				if (object instanceof Collection)
+					returnFlag &= recycleCollection((Collection<?>) object);
+				
+				// Recycle the Domino object
+				if (object instanceof Base) {
+					try {
+						((Base) object).recycle();
+						gRecycledObjects.incrementAndGet();
+					} catch (NotesException e) {
+						logMessage("Unable to recycle Domino object: " + e.text);
+						gDBLastErrorMessage.set(e.text);
+						returnFlag = false;
+					}
+
+					untrackHandle((Base) object);
+				}
+			}
+		}
+		
+		// Return indicator
+		return (returnFlag);
+	}
+	
+	/**
+	 * Save the Domino document.
+	 * 
+	 * @param	document	Domino document
+	 * @return	Indicator (success or failure)
+	 */
+	public final boolean dbSaveDocument(Document document) {
+
+		// Initialize
+		gDBLastErrorMessage.remove();
+
+		// Check arguments
+		if ((document == null) || !(document instanceof Document)) 
+			return false;
+				
+		try {
+			return document.save(true);
+		} catch (Exception e) {
+			logDebug("Unable to save Domino document: " + e.getMessage());
+			gDBLastErrorMessage.set(e.getMessage());
+			return false;
+		}
+	}
+	
+	/**
+	 * Search the documents of a database with a full-text query. The result is read page by page thru the returned
+	 * cursor, e.g. <code>while (cursor.hasNextPage()) { Vector&lt;Document&gt; page = cursor.nextPage(); ... }</code>.
+	 * If the database is not full-text indexed, the search is much slower.
+	 *
+	 * @param	db			Domino database
+	 * @param	query		Full-text query
+	 * @param	maxResults	Maximum number of documents (0 = all documents)
+	 * @param	sortOptions	Sort option, e.g. <code>Database.FT_SCORES</code> or <code>Database.FT_DATE_DES</code>
+	 * @param	pageSize	Number of documents per page
+	 * @return	Search cursor (must be closed) or null if error
+	 */
+	public final DbSearchCursor dbSearch(Database db, String query, int maxResults, int sortOptions, int pageSize) {
+
+		// Initialize
+		gDBLastErrorMessage.remove();
+
+		// Check arguments
+		if ((db == null) || !(db instanceof Database))
+			return null;
+
+		if ((query == null) || (query.length() == 0) || (maxResults < 0) || (pageSize < 1))
+			return null;
+
+		// Check if database is open
+		if (!isDbOpen(db))
+			return null;
+
+		String				dominoDbName	= null;
+		DbCircuitBreaker	circuitBreaker	= null;
+		long				startTime		= System.nanoTime();
+		boolean				failed			= false;
+
+		try {
+			dominoDbName = db.getFilePath();
+
+			// Fail fast if the database is overloaded or unavailable
+			circuitBreaker = acquireCircuitBreaker(dominoDbName);
+
+			if (circuitBreaker == null)
+				return null;
+
+			if (!db.isFTIndexed())
+				logDebug("Database " + dominoDbName + " is not full-text indexed");
+
+			DocumentCollection dominoDocumentCollection = db.FTSearch(query, maxResults, sortOptions, 0);
+			logDebug("Database " + dominoDbName + " documents matching query " + query + ": " + dominoDocumentCollection.getCount());
+
+			return (new DbSearchCursor(dominoDocumentCollection, pageSize));
+
+		} catch (Exception e) {
+			logDebug("Unable to search database " + dominoDbName + ": " + e.getMessage());
+			gDBLastErrorMessage.set(e.getMessage());
+			failed = true;
+			return null;
+
+		} finally {
+			releaseCircuitBreaker(circuitBreaker, startTime, failed);
+		}
+	}
+
+	/**
+	 * Search the documents of a database with a formula, e.g. <code>"Form = \"Ticket\" &amp; Status = \"Open\""</code>.
+	 * The result is read page by page thru the returned cursor.
+	 *
+	 * @param	db			Domino database
+	 * @param	formula		Selection formula
+	 * @param	maxResults	Maximum number of documents (0 = all documents)
+	 * @param	pageSize	Number of documents per page
+	 * @return	Search cursor (must be closed) or null if error
+	 */
+	public final DbSearchCursor dbSearchFormula(Database db, String formula, int maxResults, int pageSize) {
+
+		// Initialize
+		gDBLastErrorMessage.remove();
+
+		// Check arguments
+		if ((db == null) || !(db instanceof Database))
+			return null;
+
+		if ((formula == null) || (formula.length() == 0) || (maxResults < 0) || (pageSize < 1))
+			return null;
+
+		// Check if database is open
+		if (!isDbOpen(db))
+			return null;
+
+		String				dominoDbName	= null;
+		DbCircuitBreaker	circuitBreaker	= null;
+		long				startTime		= System.nanoTime();
+		boolean				failed			= false;
+
+		try {
+			dominoDbName = db.getFilePath();
+
+			// Fail fast if the database is overloaded or unavailable
+			circuitBreaker = acquireCircuitBreaker(dominoDbName);
+
+			if (circuitBreaker == null)
+				return null;
+
+			DocumentCollection dominoDocumentCollection = db.search(formula, null, maxResults);
+			logDebug("Database " + dominoDbName + " documents matching formula " + formula + ": " + dominoDocumentCollection.getCount());
+
+			return (new DbSearchCursor(dominoDocumentCollection, pageSize));
+
+		} catch (Exception e) {
+			logDebug("Unable to search database " + dominoDbName + ": " + e.getMessage());
+			gDBLastErrorMessage.set(e.getMessage());
+			failed = true;
+			return null;
+
+		} finally {
+			releaseCircuitBreaker(circuitBreaker, startTime, failed);
+		}
+	}
+
+	/**
+	 * Create and send a message. If the message delivery fails, a message will be written to the Domino console.
+	 * 
+	 * @param	principal	Principal name or null
+	 * @param	from		Senders name
+	 * @param	to			Recipient name
+	 * @param	subject		Subject
+	 * @param	contentType	Content type of body, e.g. "text/html"
+	 * @param	body		Body data
+	 * @return	Success or failure indicator 			 
+	 */
+	public final boolean dbSendMessage(String principal, String from, String to, String subject, String contentType, byte[] body) {
+		return (dbSendMessage(principal, from, null, to, null, null, subject, contentType, body));
+	}
+	
+	/**
+	 * Create and send a message. If the message delivery fails, a message will be written to the Domino console.
+	 * 
+	 * @param	principal	Principal name or null
+	 * @param	from		Senders name
+	 * @param	replyTo		Reply address or null
+	 * @param	to			Recipient name
+	 * @param	cc			Copy recipient or null
+	 * @param	bcc			Blind carbon copy recipient or null
+	 * @param	subject		Subject
+	 * @param	contentType	Content type of body, e.g. "text/html"
+	 * @param	body		Body data
+	 * @return	Success or failure indicator 			 
+	 */
+	public final boolean dbSendMessage(String principal, String from, String replyTo, String to, String cc, String bcc, String subject, String contentType, byte[] body) {
+		
+		// Initialize
+		gDBLastErrorMessage.remove();
+
+		// Check arguments and set defaults
+		DbMailMessage mailMessage = newMailMessage(principal, from, replyTo, to, cc, bcc, subject, contentType, body);
+
+		if (mailMessage == null)
+			return false;
+
+		return (sendMailMessage(mailMessage));
+	}
+
+	/**
+	 * Create and send a multipart MIME message built with <code>DbMimeMessage</code>. The content of the parts is
+	 * streamed in chunks to the mail document and encoded on the fly, so large reports and attachments are never held
+	 * in memory as a whole. If the message delivery fails, a message will be written to the Domino console.
+	 *
+	 * @param	mimeMessage	Message with its parts and attachments
+	 * @return	Success or failure indicator
+	 */
+	public final boolean dbSendMessage(DbMimeMessage mimeMessage) {
+
+		// Initialize
+		gDBLastErrorMessage.remove();
+
+		if (mimeMessage == null)
+			return false;
+
+		// Check arguments and set defaults
+		DbMailMessage mailMessage = newMailMessage(mimeMessage.gPrincipal, mimeMessage.gFrom, mimeMessage.gReplyTo, mimeMessage.gTo, mimeMessage.gCc, mimeMessage.gBcc, mimeMessage.gSubject, null, null);
+
+		if (mailMessage == null)
+			return false;
+
+		if (!mimeMessage.gParts.isEmpty())
+			mailMessage.gParts = new ArrayList<DbMimePart>(mimeMessage.gParts);
+
+		return (sendMailMessage(mailMessage));
+	}
+
+	/**
+	 * Deposit a message in the least busy router mail box.
+	 *
+	 * @param	mailMessage	Message to be sent
+	 * @return	Success or failure indicator
+	 */
+	private final boolean sendMailMessage(DbMailMessage mailMessage) {
+
+		String	from	= mailMessage.gFrom;
+		String	to		= mailMessage.gTo;
+		Session	session	= dbGetSession();
+
+		// Check if called from a task of getIOExecutor()
+		if (session == null)
+			return false;
+
+		logDebug("-- dbSendMessage()");
+		
+		// Open the least busy router mail box (mail.box or mail1.box thru mailN.box)
+		DbRouterMailBox	routerMailBox	= null;
+		Database		dominoMailBox	= null;
+
+		try {
+			for (DbRouterMailBox candidateMailBox : getRouterMailBoxes(session)) {
+
+				dominoMailBox = candidateMailBox.open(session);
+
+				if (dominoMailBox != null) {
+					routerMailBox = candidateMailBox;
+					break;
+				}
+			}
+		} catch (Exception e) {
+			gDBLastErrorMessage.set(e.getMessage());
+		}
+
+		if (dominoMailBox == null) {
+			logMessage("Unable to open Domino router mail box");
+			return false;
+		}
+
+		logDebug("Sending message: From " + from + " to " + to);
+		
+		boolean dominoMIMEState = false; 
+				
+		try {
+			// Disable MIME conversion
+			dominoMIMEState = session.isConvertMime();
+			session.setConvertMime(false);
+			
+			// Create the mail message in the router mail box for further delivery
+			routerMailBox.deposit(session, dominoMailBox, getMailDomain(session), mailMessage);
+
+			// Reset MIME conversion state
+			session.setConvertMime(dominoMIMEState);
+			
+			logDebug("Document successfully created in router mail box " + routerMailBox.gName + " for " + to);
+			dbRecycleObjects(dominoMailBox);
+			return true;
+			
+		} catch (NotesException e) {
+			logMessage("Unable to create mail document in router mail box: " + e.text);
+			gDBLastErrorMessage.set(e.getMessage());
+			dbRecycleObjects(dominoMailBox);
+			return false;
+		}
+	}
+	
+	/**
+	 * Send a message asynchronously. The message is journaled to the outbox directory and queued for the background
+	 * mail submitter, which retries failed deposits with exponential backoff. Messages still in the outbox when the
+	 * add-in terminates are delivered at the next start.
+	 *
+	 * @param	principal		Principal name or null
+	 * @param	from			Senders name
+	 * @param	replyTo			Reply address or null
+	 * @param	to				Recipient name
+	 * @param	cc				Copy recipient or null
+	 * @param	bcc				Blind carbon copy recipient or null
+	 * @param	subject			Subject
+	 * @param	contentType		Content type of body, e.g. "text/html"
+	 * @param	body			Body data
+	 * @param	timeoutMillis	Maximum time to wait if the queue is full
+	 * @return	Future completed with true when the message is deposited or false when the delivery finally failed, or
+	 * 			completed with a CancellationException if the message is kept in the outbox at termination
+	 */
+	public final CompletableFuture<Boolean> dbSendMessageAsync(String principal, String from, String replyTo, String to, String cc, String bcc, String subject, String contentType, byte[] body, long timeoutMillis) {
+
+		// Initialize
+		gDBLastErrorMessage.remove();
+
+		CompletableFuture<Boolean> result = new CompletableFuture<Boolean>();
+
+		// Check arguments and set defaults
+		DbMailMessage mailMessage = newMailMessage(principal, from, replyTo, to, cc, bcc, subject, contentType, body);
+
+		if (mailMessage == null) {
+			result.complete(Boolean.FALSE);
+			return (result);
+		}
+
+		mailMessage.gResult = result;
+
+		// Journal the message before it is queued
+		if (!writeOutboxMessage(mailMessage)) {
+			result.complete(Boolean.FALSE);
+			return (result);
+		}
+
+		try {
+			if (startMailSubmitter() && gMailQueue.offer(mailMessage, timeoutMillis, TimeUnit.MILLISECONDS))
+				return (result);
+
+			logDebug("Mail queue is full, message to " + to + " not queued");
+			gDBLastErrorMessage.set("Mail queue is full");
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		mailMessage.gOutboxFile.delete();
+		gOutboxDepth.decrementAndGet();
+		result.complete(Boolean.FALSE);
+		return (result);
+	}
+
+	/**
+	 * Set item in Domino document.
+	 * 
+	 * @param	document	Domino document
+	 * @param	itemName	Domino item name
+	 * @param	data		Item to be set
+	 * @return	Success or error
+	 */
+	public final boolean dbSetDocumentItem(Document document, String itemName, Object data) {
+
+		// Initialize
+		gDBLastErrorMessage.remove();
+
+		// Check arguments
+		if ((document == null) || !(document instanceof Document)) 
+			return false;
+
+		if ((itemName == null) || (itemName.length() == 0)) 
+			return false;
+				
+		try {
+			document.replaceItemValue(itemName, data);				
+		} catch (Exception e) {
+			logDebug("Unable to set value in item " + itemName + ": " + e.getMessage());
+			gDBLastErrorMessage.set(e.getMessage());
+			return false;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Set one or more items in all documents or documents matching a key from a view and save them. The items are
+	 * written with a single <code>ViewEntryCollection.stampAll()</code> or <code>stampAllMulti()</code> call instead
+	 * of reading and saving every document.
+	 *
+	 * Note: Since the documents are updated all together, a failure is reported for the whole view and not per document.
+	 *
+	 * @param	db			Domino database
+	 * @param	viewName	Domino view name
+	 * @param	key			Key for lookup or null to update all documents
+	 * @param	items		Item names and values to be set
+	 * @return	Result with the number of updated documents and the error which stopped the batch (e.g. view not found)
+	 */
+	public final DbBatchResult dbStampDocuments(Database db, String viewName, String key, Map<String, ?> items) {
+
+		// Initialize
+		gDBLastErrorMessage.remove();
+
+		DbBatchResult batchResult = new DbBatchResult();
+
+		// Check arguments
+		if ((db == null) || !(db instanceof Database) || (viewName == null) || (items == null) || items.isEmpty()) {
+			gDBLastErrorMessage.set("Invalid arguments");
+			return (batchResult.setFailed("Invalid arguments"));
+		}
+
+		// Check if database is open
+		if (!isDbOpen(db)) {
+			gDBLastErrorMessage.set("Database is not open");
+			return (batchResult.setFailed("Database is not open"));
+		}
+
+		View				dominoView					= null;
+		ViewEntryCollection	dominoViewEntryCollection	= null;
+		Document			dominoTemplateDocument		= null;
+		String				dominoDbName				= null;
+		DbCircuitBreaker	circuitBreaker				= null;
+		long				startTime					= System.nanoTime();
+		boolean				failed						= false;
+
+		try {
+			dominoDbName = db.getFilePath();
+
+			// Fail fast if the database is overloaded or unavailable
+			circuitBreaker = acquireCircuitBreaker(dominoDbName);
+
+			if (circuitBreaker == null)
+				return (batchResult.setFailed(dbGetLastErrorMessage()));
+
+			dominoView = db.getView(viewName);
+
+			if (dominoView == null) {
+				logDebug("Unable to open view " + dominoDbName + '/' + viewName);
+				gDBLastErrorMessage.set("Unable to open view " + viewName);
+				return (batchResult.setFailed("Unable to open view " + viewName));
+			}
+
+			// Get all view entries or entries matching a key
+			if (key == null)
+				dominoViewEntryCollection = dominoView.getAllEntries();
+			else
+				dominoViewEntryCollection = dominoView.getAllEntriesByKey(key);
+
+			if ((dominoViewEntryCollection == null) || (dominoViewEntryCollection.getCount() == 0)) {
+				logDebug("View " + dominoDbName + '/' + viewName + " has no documents to update");
+				dbRecycleObjects(dominoViewEntryCollection, dominoView);
+				return batchResult;
+			}
+
+			int documentCount = dominoViewEntryCollection.getCount();
+
+			// Stamp a single item directly or multiple items thru an unsaved template document
+			if (items.size() == 1) {
+				Map.Entry<String, ?> item = items.entrySet().iterator().next();
+				dominoViewEntryCollection.stampAll(item.getKey(), item.getValue());
+			} else {
+				dominoTemplateDocument = db.createDocument();
+
+				for (Map.Entry<String, ?> item : items.entrySet())
+					dominoTemplateDocument.replaceItemValue(item.getKey(), item.getValue());
+
+				dominoViewEntryCollection.stampAllMulti(dominoTemplateDocument);
+			}
+
+			batchResult.gSuccessCount = documentCount;
+			logDebug("View " + dominoDbName + '/' + viewName + " documents updated: " + documentCount);
+
+			dbRecycleObjects(dominoTemplateDocument, dominoViewEntryCollection, dominoView);
+			return batchResult;
+
+		} catch (Exception e) {
+			logDebug("Unable to update documents in view " + dominoDbName + '/' + viewName + ": " + e.getMessage());
+			dbRecycleObjects(dominoTemplateDocument, dominoViewEntryCollection, dominoView);
+			gDBLastErrorMessage.set(e.getMessage());
+			failed = true;
+			return (batchResult.setFailed(e.getMessage()));
+
+		} finally {
+			releaseCircuitBreaker(circuitBreaker, startTime, failed);
+		}
+	}
+
+	/**
+	 * Set one or more items in the passed documents and save them. The documents are processed in chunks and the
+	 * processing stops between two chunks if the add-in was interrupted. A failing document does not stop the processing
+	 * of the remaining documents.
+	 *
+	 * @param	documents	Domino documents
+	 * @param	items		Item names and values to be set
+	 * @param	chunkSize	Number of documents processed between interruption checks (0 = default of 1000)
+	 * @return	Result with the number of saved documents, the error for each failed or skipped document and the error which
+	 * 			stopped the batch
+	 */
+	public final DbBatchResult dbUpdateDocuments(Vector<Document> documents, Map<String, ?> items, int chunkSize) {
+
+		// Initialize
+		gDBLastErrorMessage.remove();
+
+		DbBatchResult batchResult = new DbBatchResult();
+
+		// Check arguments
+		if ((documents == null) || (items == null) || items.isEmpty()) {
+			gDBLastErrorMessage.set("Invalid arguments");
+			return (batchResult.setFailed("Invalid arguments"));
+		}
+
+		if (chunkSize < 1)
+			chunkSize = 1000;
+
+		int documentCount = documents.size();
+
+		for (int chunkStart = 0; chunkStart < documentCount; chunkStart += chunkSize) {
+
+			// Stop processing if the add-in was interrupted and record the documents not processed
+			if (addinInterrupted()) {
+				logDebug("Update interrupted after " + chunkStart + " of " + documentCount + " documents");
+
+				for (int index = chunkStart; index < documentCount; index++) {
+					if (documents.get(index) != null)
+						batchResult.addFailure(getDocumentID(documents.get(index), index), "Not processed (interrupted)");
+				}
+
+				gDBLastErrorMessage.set("Update interrupted");
+				batchResult.setFailed("Update interrupted");
+				break;
+			}
+
+			int chunkEnd = Math.min(chunkStart + chunkSize, documentCount);
+
+			for (int index = chunkStart; index < chunkEnd; index++) {
+
+				Document document = documents.get(index);
+
+				if (document == null)
+					continue;
+
+				// Set all items and save the document
+				try {
+					for (Map.Entry<String, ?> item : items.entrySet())
+						document.replaceItemValue(item.getKey(), item.getValue());
+
+					if (document.save(true))
+						batchResult.gSuccessCount++;
+					else
+						batchResult.addFailure(getDocumentID(document, index), "Document not saved");
+
+				} catch (Exception e) {
+					batchResult.addFailure(getDocumentID(document, index), e.getMessage());
+					gDBLastErrorMessage.set(e.getMessage());
+				}
+			}
+
+			logDebug("Documents updated: " + chunkEnd + " of " + documentCount);
+		}
+
+		if (batchResult.getFailureCount() > 0)
+			logDebug("Unable to update " + batchResult.getFailureCount() + " document(s): " + gDBLastErrorMessage.get());
+
+		return batchResult;
+	}
+
+	/**
+	 * AES-128 decrypt the passed buffer with the passed secret key (legacy ECB format of <code>encryptAES()</code>).
+	 * 
+	 * @param dataBuffer Clear text buffer
+	 * @param secretKey	Secret key for encryption
+	 * @return Encrypted buffer
+	 */
+	public final byte[] decryptAES(byte[] dataBuffer, byte[] secretKey) {
+
+		try {
+			// Get the cached key and the cipher of this thread
+			Cipher cipher = gECBCipher.get();
+			cipher.init(Cipher.DECRYPT_MODE, getAESKey(secretKey, null));
+
+			// Encrypt the buffer
+			return (cipher.doFinal(dataBuffer));
+			
+		} catch (Exception e) {
+			logMessage("Unable to decrypt from AES-128 buffer: " + e.getMessage());
+			return (new byte[0]);
+		}
+	}
+
+	/**
+	 * AES-128 decrypt a stream encrypted by <code>encryptAES()</code> (see <code>decryptAES(ReadableByteChannel, WritableByteChannel, byte[])</code>).
+	 *
+	 * @param	inputStream		Encrypted input
+	 * @param	outputStream	Clear text output
+	 * @param	secretKey		Secret key for encryption
+	 * @return	Number of bytes read or -1 for errors
+	 */
+	public final long decryptAES(InputStream inputStream, OutputStream outputStream, byte[] secretKey) {
+		return (decryptAES(Channels.newChannel(inputStream), Channels.newChannel(outputStream), secretKey));
+	}
+
+	/**
+	 * AES-128 decrypt a channel encrypted by <code>encryptAES()</code>. The data is processed in fixed-size chunks thru
+	 * direct buffers.
+	 *
+	 * @param	input		Encrypted input
+	 * @param	output		Clear text output
+	 * @param	secretKey	Secret key for encryption
+	 * @return	Number of bytes read or -1 for errors
+	 */
+	public final long decryptAES(ReadableByteChannel input, WritableByteChannel output, byte[] secretKey) {
+
+		try {
+			return (transformAES(input, output, secretKey, Cipher.DECRYPT_MODE));
+		} catch (Exception e) {
+			logMessage("Unable to decrypt from AES-128 stream: " + e.getMessage());
+			return -1;
+		}
+	}
+
+	/**
+	 * AES-256-GCM decrypt and authenticate a buffer encrypted by <code>encryptAESGCM()</code>.
+	 *
+	 * @param	dataBuffer	Encrypted buffer (version, salt, IV, cipher text and authentication tag)
+	 * @param	secretKey	Secret key for encryption
+	 * @return	Clear text buffer or empty byte array for errors (e.g. wrong key or modified data)
+	 */
+	public final byte[] decryptAESGCM(byte[] dataBuffer, byte[] secretKey) {
+
+		try {
+			if ((dataBuffer == null) || (dataBuffer.length < 1))
+				throw new IllegalArgumentException("Unknown buffer format");
+
+			if (dataBuffer[0] != AES_GCM_VERSION)
+				throw new IllegalArgumentException("Unknown buffer format");
+
+			int ivOffset = 1 + AES_KDF_SALT_LENGTH;
+
+			if (dataBuffer.length < ivOffset + AES_GCM_IV_LENGTH)
+				throw new IllegalArgumentException("Buffer truncated");
+
+			Cipher cipher = gGCMCipher.get();
+			cipher.init(Cipher.DECRYPT_MODE, getAESKey(secretKey, Arrays.copyOfRange(dataBuffer, 1, ivOffset)), new GCMParameterSpec(AES_GCM_TAG_BITS, dataBuffer, ivOffset, AES_GCM_IV_LENGTH));
+
+			return (cipher.doFinal(dataBuffer, ivOffset + AES_GCM_IV_LENGTH, dataBuffer.length - ivOffset - AES_GCM_IV_LENGTH));
+
+		} catch (Exception e) {
+			logMessage("Unable to decrypt from AES-GCM buffer: " + e.getMessage());
+			return (new byte[0]);
+		}
+	}
+
+	/**
+	 * AES-256-GCM decrypt and authenticate a stream encrypted by <code>encryptAESGCM(InputStream, OutputStream, byte[])</code>.
+	 *
+	 * @param	inputStream		Encrypted input
+	 * @param	outputStream	Clear text output
+	 * @param	secretKey		Secret key for encryption
+	 * @return	Number of clear text bytes or -1 for errors (the output is incomplete in this case)
+	 */
+	public final long decryptAESGCM(InputStream inputStream, OutputStream outputStream, byte[] secretKey) {
+		return (decryptAESGCM(Channels.newChannel(inputStream), Channels.newChannel(outputStream), secretKey));
+	}
+
+	/**
+	 * AES-256-GCM decrypt and authenticate a channel encrypted by <code>encryptAESGCM(ReadableByteChannel, WritableByteChannel, byte[])</code>.
+	 * Every chunk is authenticated before it is written, a truncated or reordered stream is detected.
+	 *
+	 * @param	input		Encrypted input
+	 * @param	output		Clear text output
+	 * @param	secretKey	Secret key for encryption
+	 * @return	Number of clear text bytes or -1 for errors (the output is incomplete in this case)
+	 */
+	public final long decryptAESGCM(ReadableByteChannel input, WritableByteChannel output, byte[] secretKey) {
+
+		long startTime = System.nanoTime();
+
+		try {
+			ByteBuffer[]	buffers			= gStreamBuffers.get();
+			ByteBuffer		inputBuffer		= ByteBuffer.allocate(AES_KDF_SALT_LENGTH + 8);
+			ByteBuffer		outputBuffer	= buffers[2];
+			Cipher			cipher			= gGCMCipher.get();
+			byte[]			salt			= new byte[AES_KDF_SALT_LENGTH];
+			byte[]			iv				= new byte[AES_GCM_IV_LENGTH];
+			long			byteCount		= 0;
+
+			// Read the header (version, salt and nonce prefix)
+			inputBuffer.limit(1);
+
+			if (!readFully(input, inputBuffer) || (inputBuffer.get(0) != AES_GCM_STREAM_VERSION))
+				throw new IllegalArgumentException("Unknown stream format");
+
+			inputBuffer.clear();
+
+			if (!readFully(input, inputBuffer))
+				throw new IllegalArgumentException("Stream truncated");
+
+			inputBuffer.flip();
+			inputBuffer.get(salt);
+			inputBuffer.get(iv, 0, 8);
+
+			SecretKeySpec aesKey = getAESKey(secretKey, salt);
+
+			for (int chunkIndex = 0; ; chunkIndex++) {
+
+				// Read the chunk header (length, high bit set for the last chunk) and the chunk
+				ByteBuffer headerBuffer = ByteBuffer.allocate(4);
+
+				if (!readFully(input, headerBuffer))
+					throw new IllegalArgumentException("Stream truncated");
+
+				int		chunkHeader	= headerBuffer.getInt(0);
+				boolean	lastChunk	= (chunkHeader < 0);
+				int		chunkLength	= chunkHeader & 0x7FFFFFFF;
+
+				if ((chunkLength < AES_GCM_TAG_BITS / 8) || (chunkLength > STREAM_CHUNK_SIZE + AES_GCM_TAG_BITS / 8))
+					throw new IllegalArgumentException("Invalid chunk length " + chunkLength);
+
+				ByteBuffer chunkBuffer = buffers[1];
+				chunkBuffer.clear();
+				chunkBuffer.limit(chunkLength);
+
+				if (!readFully(input, chunkBuffer))
+					throw new IllegalArgumentException("Stream truncated");
+
+				chunkBuffer.flip();
+
+				ByteBuffer.wrap(iv, 8, 4).putInt(chunkIndex);
+				cipher.init(Cipher.DECRYPT_MODE, aesKey, new GCMParameterSpec(AES_GCM_TAG_BITS, iv));
+				cipher.updateAAD(new byte[] {(byte) (lastChunk ? 1 : 0)});
+
+				outputBuffer.clear();
+				cipher.doFinal(chunkBuffer, outputBuffer);
+				outputBuffer.flip();
+				byteCount += outputBuffer.remaining();
+				writeFully(output, outputBuffer);
+
+				if (lastChunk)
+					break;
+			}
+
+			recordStreamMetrics(byteCount, startTime);
+			return (byteCount);
+
+		} catch (Exception e) {
+			logMessage("Unable to decrypt from AES-GCM stream: " + e.getMessage());
+			return -1;
+		}
+	}
+
+	/**
+	 * Delete the Domino statistics show in response to 'Show Stat' command.
+	 * 
+	 * @param statsName		Name of statistics
+	 */
+	public final void deleteDominoStatistic(String statsName) {
+		if (isJAddinAlive()) {
+			gJAddinMain.deleteDominoStatistic(gUserAddinName, statsName);
+		}
+	}
+	
+	/**
+	 * Create the mail document in the router mail box. MIME conversion must be disabled in the session.
+	 *
+	 * @param	session			Domino session of the current thread
+	 * @param	mailBox			Router mail box
+	 * @param	domain			Domino domain name
+	 * @param	mailMessage		Message to be sent
+	 * @throws	NotesException	Domino error
+	 */
+	private final void depositMailMessage(Session session, Database mailBox, String domain, DbMailMessage mailMessage) throws NotesException {
+
+		// Variables
+		Stream			dominoStream		= null;
+		Document		mailDocument		= null;
+		MIMEEntity		dominoMIMEEntity	= null;
+		DateTime		dominoDateTime		= null;
+
+		try {
+			// Create mail message
+			mailDocument = mailBox.createDocument();
+
+			// Set required fields
+			mailDocument.replaceItemValue("Form", "Memo");
+
+			if (mailMessage.gPrincipal != null)
+				mailDocument.replaceItemValue("Principal", '\"' + mailMessage.gPrincipal + "\"<" + mailMessage.gFrom + ">@" + domain);
+			else
+				mailDocument.replaceItemValue("Principal", mailMessage.gFrom + '@' + domain);
+
+			mailDocument.replaceItemValue("From", mailMessage.gFrom);
+			mailDocument.replaceItemValue("INETFrom", mailMessage.gFrom);
+			mailDocument.replaceItemValue("Sender", mailMessage.gFrom);
+			mailDocument.replaceItemValue("SMTPOriginator", mailMessage.gFrom);
+			mailDocument.replaceItemValue("SendTo", mailMessage.gTo + '@' + domain);
+			mailDocument.replaceItemValue("Recipients", mailMessage.gTo + '@' + domain);
+
+			dominoDateTime = session.createDateTime("Today");
+			dominoDateTime.setNow();
+			mailDocument.replaceItemValue("PostedDate", dominoDateTime);
+
+			if (mailMessage.gReplyTo != null)
+				mailDocument.replaceItemValue("ReplyTo", mailMessage.gReplyTo);
+
+			if (mailMessage.gCc != null)
+				mailDocument.replaceItemValue("CopyTo", mailMessage.gCc);
+
+			if (mailMessage.gBcc != null)
+				mailDocument.replaceItemValue("BlindCopyTo", mailMessage.gBcc);
+
+			mailDocument.replaceItemValue("Subject", mailMessage.gSubject);
+
+			// Set MIME body of message
+			dominoMIMEEntity = mailDocument.createMIMEEntity("Body");
+
+			if (mailMessage.gParts == null) {
+				dominoStream = session.createStream();
+				dominoStream.write(mailMessage.gBody);
+				dominoMIMEEntity.setContentFromBytes(dominoStream, mailMessage.gContentType, MIMEEntity.ENC_NONE);
+				dominoStream.truncate();
+				dominoStream.close();
+			} else {
+				writeMimeParts(session, dominoMIMEEntity, mailMessage.gParts);
+			}
+
+			// Store the document in the router mail box for further delivery
+			mailDocument.save(true);
+
+		} finally {
+			dbRecycleObjects(dominoDateTime, dominoMIMEEntity, dominoStream, mailDocument);
+		}
+	}
+
+	/**
+	 * AES-128 encrypt the passed buffer with the passed secret key.
+	 * 
+	 * @param dataBuffer Clear text buffer
+	 * @param secretKey	Secret key for encryption
+	 * @return Encrypted buffer
+	 */
+	public final byte[] encryptAES(byte[] dataBuffer, byte[] secretKey) {
+				
+		try {
+			// Get the cached key and the cipher of this thread
+			Cipher cipher = gECBCipher.get();
+			cipher.init(Cipher.ENCRYPT_MODE, getAESKey(secretKey, null));
+
+			// Encrypt the buffer
+			return (cipher.doFinal(dataBuffer));
+			
+		} catch (Exception e) {
+			logMessage("Unable to encrypt to AES-128 buffer: " + e.getMessage());
+			return (new byte[0]);
+		}
+	}
+
+	/**
+	 * AES-128 encrypt a stream (see <code>encryptAES(ReadableByteChannel, WritableByteChannel, byte[])</code>).
+	 *
+	 * @param	inputStream		Clear text input
+	 * @param	outputStream	Encrypted output
+	 * @param	secretKey		Secret key for encryption
+	 * @return	Number of bytes read or -1 for errors
+	 */
+	public final long encryptAES(InputStream inputStream, OutputStream outputStream, byte[] secretKey) {
+		return (encryptAES(Channels.newChannel(inputStream), Channels.newChannel(outputStream), secretKey));
+	}
+
+	/**
+	 * AES-128 encrypt a channel. The output is identical to <code>encryptAES(byte[], byte[])</code> of the whole data,
+	 * but the data is processed in fixed-size chunks thru direct buffers with constant memory.
+	 *
+	 * @param	input		Clear text input
+	 * @param	output		Encrypted output
+	 * @param	secretKey	Secret key for encryption
+	 * @return	Number of bytes read or -1 for errors
+	 */
+	public final long encryptAES(ReadableByteChannel input, WritableByteChannel output, byte[] secretKey) {
+
+		try {
+			return (transformAES(input, output, secretKey, Cipher.ENCRYPT_MODE));
+		} catch (Exception e) {
+			logMessage("Unable to encrypt to AES-128 stream: " + e.getMessage());
+			return -1;
+		}
+	}
+
+	/**
+	 * AES-256-GCM encrypt and authenticate the passed buffer. The message key is derived from the secret key (thru a
+	 * cached PBKDF2-HMAC-SHA256 master key) and a random salt with HMAC-SHA256, and every call uses a random IV. The result starts with a format version byte followed by
+	 * the salt, the IV, the cipher text and the authentication tag.
+	 *
+	 * @param	dataBuffer	Clear text buffer
+	 * @param	secretKey	Secret key for encryption
+	 * @return	Encrypted buffer or empty byte array for errors
+	 */
+	public final byte[] encryptAESGCM(byte[] dataBuffer, byte[] secretKey) {
+
+		try {
+			byte[]	salt			= new byte[AES_KDF_SALT_LENGTH];
+			byte[]	iv				= new byte[AES_GCM_IV_LENGTH];
+			int		headerLength	= 1 + AES_KDF_SALT_LENGTH + AES_GCM_IV_LENGTH;
+
+			gSecureRandom.nextBytes(salt);
+			gSecureRandom.nextBytes(iv);
+
+			Cipher cipher = gGCMCipher.get();
+			cipher.init(Cipher.ENCRYPT_MODE, getAESKey(secretKey, salt), new GCMParameterSpec(AES_GCM_TAG_BITS, iv));
+
+			byte[] encryptedBuffer = new byte[headerLength + cipher.getOutputSize(dataBuffer.length)];
+			encryptedBuffer[0] = AES_GCM_VERSION;
+			System.arraycopy(salt, 0, encryptedBuffer, 1, AES_KDF_SALT_LENGTH);
+			System.arraycopy(iv, 0, encryptedBuffer, 1 + AES_KDF_SALT_LENGTH, AES_GCM_IV_LENGTH);
+
+			int length = headerLength + cipher.doFinal(dataBuffer, 0, dataBuffer.length, encryptedBuffer, headerLength);
+			return ((length == encryptedBuffer.length) ? encryptedBuffer : Arrays.copyOf(encryptedBuffer, length));
+
+		} catch (Exception e) {
+			logMessage("Unable to encrypt to AES-GCM buffer: " + e.getMessage());
+			return (new byte[0]);
+		}
+	}
+	
+	/**
+	 * AES-256-GCM encrypt and authenticate a stream (see <code>encryptAESGCM(ReadableByteChannel, WritableByteChannel, byte[])</code>).
+	 *
+	 * @param	inputStream		Clear text input
+	 * @param	outputStream	Encrypted output
+	 * @param	secretKey		Secret key for encryption
+	 * @return	Number of bytes read or -1 for errors
+	 */
+	public final long encryptAESGCM(InputStream inputStream, OutputStream outputStream, byte[] secretKey) {
+		return (encryptAESGCM(Channels.newChannel(inputStream), Channels.newChannel(outputStream), secretKey));
+	}
+
+	/**
+	 * AES-256-GCM encrypt and authenticate a channel in chunks, so the data can be decrypted and verified with constant
+	 * memory. The output starts with a version byte, a random salt and a random nonce prefix, followed by the chunks
+	 * of up to 64 KB clear text. Every chunk is encrypted with its own IV (nonce prefix and chunk index) and carries its
+	 * length and a last chunk flag.
+	 *
+	 * @param	input		Clear text input
+	 * @param	output		Encrypted output
+	 * @param	secretKey	Secret key for encryption
+	 * @return	Number of bytes read or -1 for errors
+	 */
+	public final long encryptAESGCM(ReadableByteChannel input, WritableByteChannel output, byte[] secretKey) {
+
+		long startTime = System.nanoTime();
+
+		try {
+			ByteBuffer[]	buffers			= gStreamBuffers.get();
+			ByteBuffer		heldBuffer		= buffers[1];
+			ByteBuffer		outputBuffer	= buffers[2];
+			Cipher			cipher			= gGCMCipher.get();
+			byte[]			salt			= new byte[AES_KDF_SALT_LENGTH];
+			byte[]			iv				= new byte[AES_GCM_IV_LENGTH];
+			int[]			chunkIndex		= {0};
+
+			// Write the header (version, salt and nonce prefix)
+			gSecureRandom.nextBytes(salt);
+			gSecureRandom.nextBytes(iv);
+
+			SecretKeySpec aesKey = getAESKey(secretKey, salt);
+
+			ByteBuffer headerBuffer = ByteBuffer.allocate(1 + AES_KDF_SALT_LENGTH + 8);
+			headerBuffer.put(AES_GCM_STREAM_VERSION).put(salt).put(iv, 0, 8).flip();
+			writeFully(output, headerBuffer);
+
+			// Collect the clear text in the held buffer, a full buffer is only written when more data follows
+			heldBuffer.clear().limit(STREAM_CHUNK_SIZE);
+
+			long byteCount = readChunks(input, chunk -> {
+				while (chunk.hasRemaining()) {
+					if (!heldBuffer.hasRemaining()) {
+						heldBuffer.flip();
+						writeGCMChunk(cipher, aesKey, iv, chunkIndex[0]++, false, heldBuffer, outputBuffer, output);
+						heldBuffer.clear().limit(STREAM_CHUNK_SIZE);
+					}
+
+					ByteBuffer part = chunk.slice();
+					part.limit(Math.min(part.remaining(), heldBuffer.remaining()));
+					chunk.position(chunk.position() + part.remaining());
+					heldBuffer.put(part);
+				}
+			});
+
+			heldBuffer.flip();
+			writeGCMChunk(cipher, aesKey, iv, chunkIndex[0], true, heldBuffer, outputBuffer, output);
+
+			recordStreamMetrics(byteCount, startTime);
+			return (byteCount);
+
+		} catch (Exception e) {
+			logMessage("Unable to encrypt to AES-GCM stream: " + e.getMessage());
+			return -1;
+		}
+	}
+
+	/**
+	 * Decode passed padded Base64 string
+	 * 
+	 * @param data	Base64 string to decode
+	 * @return Decoded buffer
+	 */
+	public final byte[] fromBase64(String data) {
+		
+		try {
+			return (Base64.getDecoder().decode(data));
+		} catch (Exception e) {
+			logMessage("Unable to decode from Base64 string: " + e.getMessage());
+			return (new byte[0]);
+		}
+	}
+	
+	/**
+	 * Remove the garbage collected Domino objects from the leak report.
+	 */
+	private final void expungeHandles() {
+
+		for (Object handleReference; (handleReference = gReleasedHandles.poll()) != null; )
+			gLiveHandles.remove(handleReference);
+	}
+
+	/**
+	 * Decode the padded Base64 data between position and limit of the source buffer into the target buffer without
+	 * intermediate copies. Both buffers may be heap or direct buffers.
+	 *
+	 * @param	source	Base64 data (position is advanced to the limit)
+	 * @param	target	Target buffer (position is advanced by the number of decoded bytes)
+	 * @return	Number of decoded bytes or -1 for invalid data or a too small target buffer (no buffer is changed)
+	 */
+	public final int fromBase64(ByteBuffer source, ByteBuffer target) {
+
+		int sourcePosition	= source.position();
+		int targetPosition	= target.position();
+		int sourceLength	= source.remaining();
+
+		try {
+			if ((sourceLength % 4) != 0)
+				throw new IllegalArgumentException("Length " + sourceLength + " is not a multiple of 4");
+
+			int paddingLength = 0;
+
+			if ((sourceLength > 0) && (source.get(source.limit() - 1) == '='))
+				paddingLength = (source.get(source.limit() - 2) == '=') ? 2 : 1;
+
+			int decodedLength = sourceLength / 4 * 3 - paddingLength;
+
+			if (target.remaining() < decodedLength)
+				throw new IllegalArgumentException("Target buffer too small for " + decodedLength + " bytes");
+
+			for (int group = sourceLength / 4; group > 0; group--) {
+
+				int bits	= 0;
+				int padding	= (group == 1) ? paddingLength : 0;
+
+				for (int index = 0; index < 4; index++) {
+					int value = source.get() & 0xFF;
+
+					// The padding characters of the last group are already checked
+					if (index >= 4 - padding) {
+						bits <<= 6;
+						continue;
+					}
+
+					if (BASE64_VALUES[value] < 0)
+						throw new IllegalArgumentException("Illegal Base64 character '" + (char) value + "'");
+
+					bits = (bits << 6) | BASE64_VALUES[value];
+				}
+
+				target.put((byte) (bits >> 16));
+
+				if (padding < 2)
+					target.put((byte) (bits >> 8));
+
+				if (padding < 1)
+					target.put((byte) bits);
+			}
+
+			return (decodedLength);
+
+		} catch (Exception e) {
+			logMessage("Unable to decode from Base64 buffer: " + e.getMessage());
+			source.position(sourcePosition);
+			target.position(targetPosition);
+			return -1;
+		}
+	}
+
+	/**
+	 * Wrap an input stream to decode Base64 data while it is read, e.g. a large encoded payload.
+	 *
+	 * @param	inputStream	Stream with Base64 data
+	 * @return	Stream returning the decoded data (closing it closes the wrapped stream)
+	 */
+	public final InputStream fromBase64(InputStream inputStream) {
+		return (Base64.getDecoder().wrap(inputStream));
+	}
+
+	/**
+	 * Hash the passed byte array
+	 * @param hashType	Hash type (MD5, SHA-1, SHA-256)
+	 * @param buffer	Buffer to hash
+	 * @return	Hash code or empty byte array for errors
+	 */
+	public final byte[] generateHash(String hashType, byte[] buffer) {
+		
+		try {
+			return (getMessageDigest(hashType).digest(buffer));
+		} catch (Exception e) {
+			logMessage("Unable to hash with " + hashType + " algorithm: " + e.getMessage());
+			return (new byte[0]);
+		}
+	}
+
+	/**
+	 * Hash a file. The file is read in chunks thru a direct buffer, so its size does not affect the memory used.
+	 *
+	 * @param	hashType	Hash type (MD5, SHA-1, SHA-256)
+	 * @param	file		File to hash
+	 * @return	Hash code or empty byte array for errors
+	 */
+	public final byte[] generateHash(String hashType, File file) {
+
+		try (FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			return (generateHash(hashType, fileChannel));
+		} catch (Exception e) {
+			logMessage("Unable to hash file " + file + " with " + hashType + " algorithm: " + e.getMessage());
+			return (new byte[0]);
+		}
+	}
+
+	/**
+	 * Hash a stream in fixed-size chunks.
+	 *
+	 * @param	hashType	Hash type (MD5, SHA-1, SHA-256)
+	 * @param	inputStream	Stream to hash (not closed)
+	 * @return	Hash code or empty byte array for errors
+	 */
+	public final byte[] generateHash(String hashType, InputStream inputStream) {
+		return (generateHash(hashType, Channels.newChannel(inputStream)));
+	}
+
+	/**
+	 * Hash a channel in fixed-size chunks thru a direct buffer.
+	 *
+	 * @param	hashType	Hash type (MD5, SHA-1, SHA-256)
+	 * @param	input		Channel to hash (not closed)
+	 * @return	Hash code or empty byte array for errors
+	 */
+	public final byte[] generateHash(String hashType, ReadableByteChannel input) {
+
+		long startTime = System.nanoTime();
+
+		try {
+			MessageDigest	messageDigest	= getMessageDigest(hashType);
+			long			byteCount		= readChunks(input, chunk -> messageDigest.update(chunk));
+
+			recordStreamMetrics(byteCount, startTime);
+			return (messageDigest.digest());
+
+		} catch (Exception e) {
+			logMessage("Unable to hash with " + hashType + " algorithm: " + e.getMessage());
+			return (new byte[0]);
+		}
+	}
+
+	/**
+	 * Hash many files in parallel, e.g. to find duplicate attachments. The files are hashed on a fork-join pool with one
+	 * thread per processor (see <code>generateHash(String, File)</code>).
+	 *
+	 * @param	hashType	Hash type (MD5, SHA-1, SHA-256)
+	 * @param	files		Files to hash
+	 * @return	Hash code of every file in the order of the collection (empty byte array for errors)
+	 */
+	public final Map<File, byte[]> generateHashes(String hashType, Collection<File> files) {
+
+		try {
+			return (getHashPool().submit(() -> files.parallelStream()
+					.collect(Collectors.toMap(file -> file, file -> generateHash(hashType, file), (first, second) -> first, LinkedHashMap<File, byte[]>::new))).get());
+
+		} catch (Exception e) {
+			logMessage("Unable to hash files with " + hashType + " algorithm: " + e.getMessage());
+			return (new LinkedHashMap<File, byte[]>());
+		}
+	}
+
+	/**
+	 * Hash many buffers in parallel on a fork-join pool with one thread per processor.
+	 *
+	 * @param	hashType	Hash type (MD5, SHA-1, SHA-256)
+	 * @param	buffers		Buffers to hash
+	 * @return	Hash code of every buffer in the order of the list (empty byte array for errors)
+	 */
+	public final List<byte[]> generateHashes(String hashType, List<byte[]> buffers) {
+
+		try {
+			return (getHashPool().submit(() -> buffers.parallelStream().map(buffer -> generateHash(hashType, buffer)).collect(Collectors.toList())).get());
+
+		} catch (Exception e) {
+			logMessage("Unable to hash buffers with " + hashType + " algorithm: " + e.getMessage());
+			return (new ArrayList<byte[]>());
+		}
+	}
+
+	/**
+	 * Get the AES key derived from a secret key. The expensive PBKDF2 master key of AES-GCM is derived once per secret
+	 * key, the key of a message is the HMAC-SHA256 of the salt of the message with the master key. The keys derived
+	 * from the secret key are cached, the least recently used key is removed when the cache is full.
+	 *
+	 * @param	secretKey	Secret key
+	 * @param	salt		Salt of the 256 bit message key of AES-GCM, null for the MD5 derived 128 bit legacy key
+	 * @return	AES key
+	 * @throws	Exception	Key derivation failed
+	 */
+	private final SecretKeySpec getAESKey(byte[] secretKey, byte[] salt) throws Exception {
+
+		Map<ByteBuffer, SecretKeySpec>	keyCache	= (salt != null) ? gGCMKeys : gECBKeys;
+		SecretKeySpec					cachedKey	= keyCache.get(ByteBuffer.wrap(secretKey));
+
+		if (cachedKey == null) {
+			if (salt != null) {
+				char[] password = new char[secretKey.length];
+
+				for (int index = 0; index < secretKey.length; index++)
+					password[index] = (char) (secretKey[index] & 0xFF);
+
+				PBEKeySpec keySpec = new PBEKeySpec(password, AES_MASTER_KEY_SALT, AES_KDF_ITERATIONS, 256);
+				cachedKey = new SecretKeySpec(SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(keySpec).getEncoded(), "HmacSHA256");
+				keySpec.clearPassword();
+				Arrays.fill(password, '\0');
+			} else {
+				// MD5 hash the secret key and trim down hash to 128 bits
+				cachedKey = new SecretKeySpec(Arrays.copyOf(getMessageDigest("MD5").digest(secretKey), 16), "AES");
+			}
+
+			keyCache.put(ByteBuffer.wrap(secretKey.clone()), cachedKey);
+		}
+
+		if (salt == null)
+			return (cachedKey);
+
+		// Derive the message key from the master key
+		Mac mac = gKeyMac.get();
+		mac.init(cachedKey);
+		return (new SecretKeySpec(mac.doFinal(salt), "AES"));
+	}
+
+	/**
+	 * Get the file holding the persisted checkpoints of this add-in (located in the Domino data directory).
+	 *
+	 * @return	Checkpoint file
+	 */
+	private final File getCheckpointFile() {
+		return (new File(getDataDirectory(), gUserAddinName + CHECKPOINT_SUFFIX));
+	}
+
+	/**
+	 * Get the Domino data directory. It is read once thru the add-in session and cached for the background threads.
+	 *
+	 * @return	Data directory (falls back to the current directory)
+	 */
+	private final String getDataDirectory() {
+
+		if (gDataDirectory != null)
+			return (gDataDirectory);
+
+		String dataDirectory = null;
+
+		try {
+			dataDirectory = dbGetSession().getEnvironmentString("Directory", true);
+		} catch (Exception e) {
+			logDebug("Unable to get Domino data directory: " + e.getMessage());
+		}
+
+		// Only the data directory read from Domino is cached (not available on I/O threads)
+		if ((dataDirectory == null) || (dataDirectory.length() == 0))
+			return (System.getProperty("user.dir", "."));
+
+		gDataDirectory = dataDirectory;
+		return (dataDirectory);
+	}
+
+	/**
+	 * Get the directory holding the journaled messages of <code>dbSendMessageAsync()</code> (located in the Domino data directory).
+	 *
+	 * @return	Outbox directory
+	 */
+	private final File getOutboxDirectory() {
+		return (new File(getDataDirectory(), gUserAddinName + OUTBOX_SUFFIX));
+	}
+
+	/**
+	 * Get the decoding table of the Base64 alphabet.
+	 *
+	 * @return	Value of every byte (-1 for bytes not in the alphabet)
+	 */
+	private static int[] getBase64Values() {
+
+		int[] base64Values = new int[256];
+		Arrays.fill(base64Values, -1);
+
+		for (int index = 0; index < BASE64_ALPHABET.length; index++)
+			base64Values[BASE64_ALPHABET[index]] = index;
+
+		return (base64Values);
+	}
+
+	/**
+	 * Get the name of the circuit breaker of a database: the file path relative to the data directory in lower case
+	 * with forward slashes, so the names passed by the caller and the paths returned by <code>getFilePath()</code> (full
+	 * path for local databases) refer to the same circuit breaker.
+	 *
+	 * @param	dbName	Database name with path
+	 * @return	Normalized file path
+	 */
+	private final String getBreakerName(String dbName) {
+
+		String breakerName		= dbName.toLowerCase().replace('\\', '/');
+		String dataDirectory	= getDataDirectory().toLowerCase().replace('\\', '/');
+
+		if (!dataDirectory.endsWith("/"))
+			dataDirectory += '/';
+
+		if (breakerName.startsWith(dataDirectory))
+			breakerName = breakerName.substring(dataDirectory.length());
+
+		while (breakerName.startsWith("/"))
+			breakerName = breakerName.substring(1);
+
+		return (breakerName);
+	}
+
+	/**
+	 * Get the circuit breaker of a database.
+	 *
+	 * @param	dbName	Database name with path
+	 * @return	Circuit breaker of the database
+	 */
+	private final DbCircuitBreaker getCircuitBreaker(String dbName) {
+		return (gCircuitBreakers.computeIfAbsent(getBreakerName(dbName), breakerName -> new DbCircuitBreaker(breakerName)));
+	}
+
+	/**
+	 * Get the parameters passed to the add-in.
+	 * 
+	 * @return	Arguments passed to this add-in or null
+	 */
+	public final String getAddinParameters() {
+		return gStartArguments;
+	}
+	
+	/**
+	 * Get the debug state
+	 * 
+	 * @return	Status of debug logging
+	 */
+	public final boolean getDebugState() {
+		if (isJAddinAlive()) {
+			return (gJAddinMain.getDebugState());
+		}
+		else {
+			return false;
+		}
+	}
+
+	/**
+	 * Get the universal ID of a document for error reporting.
+	 *
+	 * @param	document	Domino document
+	 * @param	index		Position of the document used if the universal ID is not available
+	 * @return	Universal ID or position of the document
+	 */
+	private final String getDocumentID(Document document, int index) {
+
+		try {
+			return (document.getUniversalID());
+		} catch (Exception e) {
+			return ("#" + index);
+		}
+	}
+
+	/**
+	 * Get the pool of the batch hashing methods (created on first use).
+	 *
+	 * @return	Fork-join pool
+	 */
+	private final synchronized ForkJoinPool getHashPool() {
+
+		if (gHashPool == null)
+			gHashPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+		return (gHashPool);
+	}
+
+	/**
+	 * Get the executor for blocking I/O without Domino calls, e.g. HTTP requests or file access. On Java 21 and later
+	 * every task runs in its own virtual thread, so thousands of requests can wait concurrently. On older JVMs a cached
+	 * pool of platform threads is used.
+	 * <p>
+	 * Domino objects must never be used in these tasks: the Domino API requires an initialized native thread, which a
+	 * virtual thread can not guarantee (it may move between carrier threads). <code>dbGetSession()</code> returns null
+	 * in these tasks. Pass the Domino work to <code>getWorkerExecutor()</code> or back to the add-in thread, e.g. with
+	 * <code>CompletableFuture.supplyAsync(this::fetch, getIOExecutor()).thenAcceptAsync(this::store, getWorkerExecutor())</code>.
+	 * <p>
+	 * The executor is shut down when the add-in terminates (running tasks are interrupted after 1 second) and must not
+	 * be shut down by the caller.
+	 *
+	 * @return	Executor or null if the add-in terminates
+	 */
+	public final ExecutorService getIOExecutor() {
+
+		ExecutorService ioExecutor = gIOExecutor;
+
+		if (ioExecutor != null)
+			return (ioExecutor.isShutdown() ? null : ioExecutor);
+
+		synchronized (this) {
+			if (gIOExecutor != null)
+				return (gIOExecutor.isShutdown() ? null : gIOExecutor);
+
+			if (gCleanupDone)
+				return null;
+
+			// Use virtual threads if the JVM supports them (looked up by reflection to stay compatible with Java 8)
+			try {
+				gIOExecutor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+				logDebug("I/O executor started with virtual threads");
+
+			} catch (Exception e) {
+				AtomicInteger threadNumber = new AtomicInteger();
+
+				gIOExecutor = Executors.newCachedThreadPool(task -> {
+					Thread thread = new DbIOThread(task, gUserAddinName + "-IO-" + threadNumber.incrementAndGet());
+					thread.setDaemon(true);
+					return (thread);
+				});
+
+				logDebug("I/O executor started with platform threads (virtual threads not supported by this JVM)");
+			}
+
+			return (gIOExecutor);
+		}
+	}
+
+	/**
+	 * Get the Domino domain name (read from Notes.ini once).
+	 *
+	 * @param	session			Domino session of the current thread
+	 * @return	Domino domain name
+	 * @throws	NotesException	Domino error
+	 */
+	private final String getMailDomain(Session session) throws NotesException {
+
+		if (gMailDomain == null)
+			gMailDomain = session.getEnvironmentString("Domain", true);
+
+		return (gMailDomain);
+	}
+
+	/**
+	 * Get the message digest of this thread for a hash algorithm. The digest instances are cached per thread, so no
+	 * provider lookup and no lock is needed.
+	 *
+	 * @param	hashType	Hash type (MD5, SHA-1, SHA-256)
+	 * @return	Reset message digest
+	 * @throws	Exception	Unknown algorithm
+	 */
+	private final MessageDigest getMessageDigest(String hashType) throws Exception {
+
+		Map<String, MessageDigest>	messageDigests	= gMessageDigests.get();
+		MessageDigest				messageDigest	= messageDigests.get(hashType);
+
+		if (messageDigest == null) {
+			messageDigest = MessageDigest.getInstance(hashType);
+			messageDigests.put(hashType, messageDigest);
+		} else {
+			messageDigest.reset();
+		}
+
+		return (messageDigest);
+	}
+
+	/**
+	 * Read the items declared in the mapping from a Domino document.
+	 *
+	 * @param	document	Domino document
+	 * @param	mapping		Mapping with item names
+	 * @return	Item values in the order of the mapping
+	 * @throws	NotesException	Domino error
+	 */
+	private final Object[] getRecordValues(Document document, DbRecordMapping<?> mapping) throws NotesException {
+
+		Object[] recordValues = new Object[mapping.gItemNames.length];
+
+		for (int index = 0; index < recordValues.length; index++)
+			recordValues[index] = toJavaValues(document.getItemValue(mapping.gItemNames[index]));
+
+		return (recordValues);
+	}
+
+	/**
+	 * Read the columns declared in the mapping from a view entry with a single call.
+	 *
+	 * @param	viewEntry	Domino view entry
+	 * @param	mapping		Mapping with column indexes
+	 * @return	Column values in the order of the mapping
+	 * @throws	NotesException	Domino error
+	 */
+	private final Object[] getRecordValues(ViewEntry viewEntry, DbRecordMapping<?> mapping) throws NotesException {
+
+		Vector<?>	columnValues	= viewEntry.getColumnValues();
+		Object[]	recordValues	= new Object[mapping.gColumnIndexes.length];
+
+		for (int index = 0; index < recordValues.length; index++) {
+			int columnIndex = mapping.gColumnIndexes[index];
+
+			recordValues[index] = toJavaValues((columnIndex < columnValues.size()) ? columnValues.get(columnIndex) : null);
+		}
+
+		return (recordValues);
+	}
+
+	/**
+	 * Get the router mail boxes ordered by preference: the mail box with the fewest deposits in progress first and the
+	 * others in round-robin order. The mail boxes are discovered on first use from the Notes.ini setting
+	 * <code>MailBoxes</code> (mail1.box thru mailN.box, or mail.box if not set) and only existing ones are kept.
+	 *
+	 * @param	session			Domino session of the current thread
+	 * @return	Router mail boxes (empty if none available)
+	 * @throws	NotesException	Domino error
+	 */
+	private final DbRouterMailBox[] getRouterMailBoxes(Session session) throws NotesException {
+
+		DbRouterMailBox[] routerMailBoxes = gRouterMailBoxes;
+
+		// Discover the router mail boxes once
+		if (routerMailBoxes == null) {
+
+			synchronized (gMailQueue) {
+
+				if (gRouterMailBoxes == null) {
+
+					int mailBoxCount = 0;
+
+					try {
+						mailBoxCount = Integer.parseInt(session.getEnvironmentString("MailBoxes", true).trim());
+					} catch (Exception e) {
+						mailBoxCount = 0;
+					}
+
+					List<String> mailBoxNames = new ArrayList<String>();
+
+					if (mailBoxCount > 1) {
+						for (int index = 1; index <= mailBoxCount; index++)
+							mailBoxNames.add("mail" + index + ".box");
+					} else {
+						mailBoxNames.add("mail.box");
+						mailBoxNames.add("mail1.box");
+					}
+
+					// Keep only the existing mail boxes
+					List<DbRouterMailBox> existingMailBoxes = new ArrayList<DbRouterMailBox>();
+
+					for (String mailBoxName : mailBoxNames) {
+
+						DbRouterMailBox	routerMailBox	= new DbRouterMailBox(mailBoxName);
+						Database		mailBox			= routerMailBox.open(session);
+
+						if (mailBox != null) {
+							existingMailBoxes.add(routerMailBox);
+							dbRecycleObjects(mailBox);
+
+							// Only one of mail.box or mail1.box is used without MailBoxes setting
+							if (mailBoxCount <= 1)
+								break;
+						}
+					}
+
+					logDebug("Router mail boxes: " + existingMailBoxes);
+
+					// Do not remember an empty result to discover again on next use
+					if (existingMailBoxes.isEmpty())
+						return (new DbRouterMailBox[0]);
+
+					gRouterMailBoxes = existingMailBoxes.toArray(new DbRouterMailBox[existingMailBoxes.size()]);
+				}
+
+				routerMailBoxes = gRouterMailBoxes;
+			}
+		}
+
+		// Rotate the mail boxes (round-robin) and move the least busy first (stable sort)
+		int					mailBoxCount		= routerMailBoxes.length;
+		int					startIndex			= Math.floorMod(gMailBoxIndex.getAndIncrement(), mailBoxCount);
+		DbRouterMailBox[]	orderedMailBoxes	= new DbRouterMailBox[mailBoxCount];
+
+		for (int index = 0; index < mailBoxCount; index++)
+			orderedMailBoxes[index] = routerMailBoxes[(startIndex + index) % mailBoxCount];
+
+		Arrays.sort(orderedMailBoxes, (mailBox1, mailBox2) -> Integer.compare(mailBox1.gInFlight.get(), mailBox2.gInFlight.get()));
+		return (orderedMailBoxes);
+	}
+
+	/**
+	 * Get the health score of a server.
+	 *
+	 * @param	server	Server name (null or empty string for the local server)
+	 * @return	Health score of the server
+	 */
+	private final DbServerHealth getServerHealth(String server) {
+		return (gServerHealth.computeIfAbsent((server == null) ? "" : server.toLowerCase(), serverName -> new DbServerHealth()));
+	}
+
+	/**
+	 * Get the stack of a thread with the lock it waits for and the locks it holds. If the lock is owned by another
+	 * thread, the stack of the owner is added.
+	 *
+	 * @param	threadID	Thread ID
+	 * @return	Thread dump
+	 */
+	private static String getThreadDump(long threadID) {
+
+		ThreadMXBean	threadBean	= ManagementFactory.getThreadMXBean();
+		StringBuilder	threadDump	= new StringBuilder(4096);
+		ThreadInfo		threadInfo	= threadBean.getThreadInfo(new long[] {threadID}, threadBean.isObjectMonitorUsageSupported(), threadBean.isSynchronizerUsageSupported())[0];
+
+		appendThreadInfo(threadDump, threadInfo);
+
+		if ((threadInfo != null) && (threadInfo.getLockOwnerId() != -1)) {
+			threadDump.append("Lock owner:\n");
+			appendThreadInfo(threadDump, threadBean.getThreadInfo(new long[] {threadInfo.getLockOwnerId()}, threadBean.isObjectMonitorUsageSupported(), threadBean.isSynchronizerUsageSupported())[0]);
+		}
+
+		return (threadDump.toString());
+	}
+
+	/**
+	 * Append the complete stack of a thread (<code>ThreadInfo.toString()</code> is limited to 8 frames).
+	 *
+	 * @param	threadDump	Thread dump
+	 * @param	threadInfo	Thread information or null if the thread has terminated
+	 */
+	private static void appendThreadInfo(StringBuilder threadDump, ThreadInfo threadInfo) {
+
+		if (threadInfo == null) {
+			threadDump.append("Thread terminated\n");
+			return;
+		}
+
+		threadDump.append('"').append(threadInfo.getThreadName()).append("\" Id=").append(threadInfo.getThreadId()).append(' ').append(threadInfo.getThreadState());
+
+		if (threadInfo.getLockName() != null)
+			threadDump.append(" on ").append(threadInfo.getLockName());
+
+		if (threadInfo.getLockOwnerName() != null)
+			threadDump.append(" owned by \"").append(threadInfo.getLockOwnerName()).append("\" Id=").append(threadInfo.getLockOwnerId());
+
+		threadDump.append('\n');
+
+		StackTraceElement[]	stackTrace	= threadInfo.getStackTrace();
+		MonitorInfo[]		monitors	= threadInfo.getLockedMonitors();
+
+		for (int depth = 0; depth < stackTrace.length; depth++) {
+			threadDump.append("\tat ").append(stackTrace[depth]).append('\n');
+
+			for (MonitorInfo monitor : monitors) {
+				if (monitor.getLockedStackDepth() == depth)
+					threadDump.append("\t- locked ").append(monitor).append('\n');
+			}
+		}
+
+		for (LockInfo synchronizer : threadInfo.getLockedSynchronizers())
+			threadDump.append("\t- locked synchronizer ").append(synchronizer).append('\n');
+	}
+
+	/**
+	 * Look up a method of the Thread class which is not available in all Java versions.
+	 *
+	 * @param	methodName	Method name
+	 * @return	Method or null if not available
+	 */
+	private static Method getThreadMethod(String methodName) {
+
+		try {
+			return (Thread.class.getMethod(methodName));
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Get the executor running tasks on the worker threads of this add-in. The workers are Domino threads with their own
+	 * session (see <code>dbGetSession()</code>). The executor is created on first use with the number of threads set by
+	 * <code>setWorkerThreads()</code> or the Notes.ini setting <code>AddinName_WorkerThreads</code> and is shut down
+	 * when the add-in terminates: queued tasks are completed for up to 3 seconds, then the workers are interrupted.
+	 * The executor must not be shut down by the caller.
+	 *
+	 * @return	Executor or null if the add-in terminates
+	 */
+	public final ExecutorService getWorkerExecutor() {
+
+		ThreadPoolExecutor workerExecutor = gWorkerExecutor;
+
+		if (workerExecutor != null)
+			return (workerExecutor.isShutdown() ? null : workerExecutor);
+
+		synchronized (this) {
+			if (gWorkerExecutor != null)
+				return (gWorkerExecutor.isShutdown() ? null : gWorkerExecutor);
+
+			if (gCleanupDone)
+				return null;
+
+			gWorkerExecutor = new ThreadPoolExecutor(gWorkerThreads, gWorkerThreads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), task -> {
+				DbWorkerThread workerThread = new DbWorkerThread(task);
+				workerThread.setName(gUserAddinName + "-Worker-" + gWorkerNumber.incrementAndGet());
+				workerThread.setDaemon(true);
+				return (workerThread);
+			});
+
+			logDebug("Worker executor started with " + gWorkerThreads + " thread(s)");
+			return (gWorkerExecutor);
+		}
+	}
+
+	/**
+	 * Check if Domino database is open.
+	 * 
+	 * @param	db		Domino database
+	 * @return	True if database is open, false otherwise
+	 */
+	public final boolean isDbOpen(Database db) {
+		
+		// Initialize
+		gDBLastErrorMessage.remove();
+
+		// Check arguments
+		if (!(db instanceof Database)) {
+			return false;
+		}
+			
+		try {
+			return db.isOpen();
+		} catch (Exception e) {
+			logDebug("Unable to check for open Domino database: " + e.getMessage());
+			gDBLastErrorMessage.set(e.getMessage());
+			return false;
+		}
+	}
+	
+	/**
+	 * Check if a thread runs tasks of <code>getIOExecutor()</code> (a virtual thread or an I/O pool thread).
+	 *
+	 * @param	thread	Thread to check
+	 * @return	True for an I/O thread, false otherwise
+	 */
+	private static boolean isIOThread(Thread thread) {
+
+		if (thread instanceof DbIOThread)
+			return true;
+
+		try {
+			return ((THREAD_IS_VIRTUAL != null) && ((Boolean) THREAD_IS_VIRTUAL.invoke(thread)).booleanValue());
+		} catch (Exception e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Return live state of JAddin main thread .
+	 * 
+	 * @return	Indicator if JAddin main thread is alive or not
+	 */
+	public final boolean isJAddinAlive() {
+		
+		if ((gJAddinMain != null) && gJAddinMain.isAlive()) {
+			return true;
+		} else {
+			gJAddinMain = null;
+			return false;
+		}
+	}
+	
+	/**
+	 * Load the persisted checkpoints from the checkpoint file (only read once). The checkpoints are loaded under the
+	 * lock of the pending checkpoints, because worker threads may call <code>dbGetModifiedDocuments()</code>.
+	 *
+	 * @return	Committed checkpoints
+	 * @throws	Exception	Checkpoint file could not be read
+	 */
+	private final Properties loadCheckpoints() throws Exception {
+
+		synchronized (gPendingCheckpoints) {
+
+			// Check if checkpoints already loaded
+			if (gCheckpoints != null)
+				return (gCheckpoints);
+
+			Properties	checkpoints		= new Properties();
+			File		checkpointFile	= getCheckpointFile();
+
+			if (checkpointFile.exists()) {
+				try (FileInputStream inputStream = new FileInputStream(checkpointFile)) {
+					checkpoints.load(inputStream);
+				}
+
+				logDebug("Loaded " + checkpoints.size() + " checkpoint(s) from " + checkpointFile);
+			}
+
+			gCheckpoints = checkpoints;
+			return (checkpoints);
+		}
+	}
+
+	/**
+ 	 * Write debug message to the Domino console. The message string will be prepended with the debugging
+	 * information, e.g. <code>"DEBUG: AddinName.MethodName(LineNumber) xxxxxxxx"</code>.
+	 * 
+	 * @param	message		Message to be displayed
+	 */
+	public final void logDebug(String message) {
+		
+		if (isJAddinAlive() && gJAddinMain.getDebugState()) {
+			gJAddinMain.logDebug(gUserAddinName, message);
+		}
+	}
+	
+	/**
+	 * Write the Domino objects returned in debug mode and not recycled thru <code>dbRecycleObjects()</code> or an arena
+	 * to the Domino console, with the location in the source code where each object was returned. Objects recycled
+	 * directly or thru their parent are only removed once they are garbage collected.
+	 */
+	private final void logLeakedHandles() {
+
+		// Get the objects still reachable
+		expungeHandles();
+
+		List<DbHandleReference> leakedHandles = new ArrayList<DbHandleReference>();
+
+		for (DbHandleReference handleReference : gLiveHandles) {
+			if (handleReference.get() != null)
+				leakedHandles.add(handleReference);
+		}
+
+		gLiveHandles.clear();
+
+		if (leakedHandles.isEmpty())
+			return;
+
+		logMessage("Warning: " + leakedHandles.size() + " Domino object(s) were not recycled thru dbRecycleObjects()");
+
+		// Show the allocation site (first caller outside of the framework)
+		for (DbHandleReference leakedHandle : leakedHandles.subList(0, Math.min(leakedHandles.size(), 100))) {
+
+			String allocationSite = "N/A";
+
+			for (StackTraceElement stackTraceElement : leakedHandle.gAllocationSite.getStackTrace()) {
+				if (!stackTraceElement.getClassName().startsWith(JAddinThread.class.getName())) {
+					allocationSite = stackTraceElement.toString();
+					break;
+				}
+			}
+
+			logDebug("Leaked " + leakedHandle.gClassName + " allocated at " + allocationSite);
+		}
+	}
+
+	/**
+	 * Write a log message to the Domino console. The message string will be prepended with the add-in name
+	 * followed by a column, e.g. <code>"HelloWorld: xxxxxxxx"</code>
+	 * 
+	 * @param 	message		Message to be displayed
+	 */
+	public final void logMessage(String message) {
+		if (isJAddinAlive()) {
+			gJAddinMain.logMessage(gUserAddinName, message);
+		}
+	}
+		
+	/**
+	 * Render and queue the messages of a mail merge, then wait for the deposits. The timeout applies to the whole call:
+	 * recipients read after the deadline are not sent and counted as failed.
+	 *
+	 * @param	template		Compiled template
+	 * @param	recipientSource	Source passing the field values of every recipient to the given consumer
+	 * @param	threadCount		Number of rendering threads
+	 * @param	timeoutMillis	Maximum time for the whole mail merge
+	 * @return	Counts and per-phase timings (with the error message if the recipients could not be read)
+	 */
+	private final DbMailMergeResult mailMerge(DbMailTemplate template, Consumer<Consumer<Map<String, ?>>> recipientSource, int threadCount, long timeoutMillis) {
+
+		DbMailMergeResult					result			= new DbMailMergeResult();
+		List<CompletableFuture<Boolean>>	deliveries		= Collections.synchronizedList(new ArrayList<CompletableFuture<Boolean>>());
+		AtomicInteger						rejectedCount	= new AtomicInteger();
+		AtomicLong							renderNanos		= new AtomicLong();
+		AtomicInteger						threadNumber	= new AtomicInteger();
+		long								startTime		= System.nanoTime();
+		long								deadline		= startTime + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+		if (!startMailSubmitter())
+			return (result);
+
+		if (threadCount < 1)
+			threadCount = 1;
+
+		// The bounded work queue throttles the caller when the rendering threads fall behind
+		ThreadPoolExecutor renderPool = new ThreadPoolExecutor(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(threadCount * 64), runnable -> {
+			Thread thread = new Thread(runnable, gUserAddinName + "-MailMerge-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return (thread);
+		}, new ThreadPoolExecutor.CallerRunsPolicy());
+
+		try {
+			recipientSource.accept(fieldValues -> {
+				result.gRecipientCount++;
+
+				if (deadline - System.nanoTime() <= 0) {
+					rejectedCount.incrementAndGet();
+					return;
+				}
+
+				renderPool.execute(() -> {
+					long renderStartTime = System.nanoTime();
+
+					DbMailMessage mailMessage = newMailMessage(null, template.gFrom, null, DbMailTemplate.toText(fieldValues.get(template.gRecipientField)), null, null,
+							template.renderSubject(fieldValues), template.gContentType, template.renderBody(fieldValues).getBytes(StandardCharsets.UTF_8));
+
+					renderNanos.addAndGet(System.nanoTime() - renderStartTime);
+
+					if (mailMessage == null) {
+						rejectedCount.incrementAndGet();
+						return;
+					}
+
+					mailMessage.gResult = new CompletableFuture<Boolean>();
+
+					try {
+						if (gMailQueue.offer(mailMessage, Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS))
+							deliveries.add(mailMessage.gResult);
+						else
+							rejectedCount.incrementAndGet();
+
+					} catch (InterruptedException e) {
+						rejectedCount.incrementAndGet();
+						Thread.currentThread().interrupt();
+					}
+				});
+			});
+
+		} catch (Exception e) {
+			// The messages already queued are still sent and counted
+			logMessage("Mail merge aborted: " + e.getMessage());
+			gDBLastErrorMessage.set(e.getMessage());
+			result.gErrorMessage = e.getMessage();
+
+		} finally {
+			renderPool.shutdown();
+		}
+
+		// Wait for the rendering threads, the messages not rendered by the deadline are not sent
+		try {
+			if (!renderPool.awaitTermination(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS))
+				rejectedCount.addAndGet(renderPool.shutdownNow().size());
+		} catch (InterruptedException e) {
+			rejectedCount.addAndGet(renderPool.shutdownNow().size());
+			Thread.currentThread().interrupt();
+		}
+
+		long queuedTime = System.nanoTime();
+
+		// Wait for the mail submitter
+		try {
+			CompletableFuture.allOf(deliveries.toArray(new CompletableFuture<?>[0])).get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException | TimeoutException e) {
+			logDebug("Mail merge deposits not completed: " + e);
+		}
+
+		long endTime = System.nanoTime();
+
+		synchronized (deliveries) {
+			for (CompletableFuture<Boolean> delivery : deliveries) {
+				if (!delivery.isDone())
+					result.gPendingCount++;
+				else if (Boolean.TRUE.equals(delivery.getNow(Boolean.FALSE)))
+					result.gDepositedCount++;
+				else
+					result.gFailedCount++;
+			}
+		}
+
+		result.gFailedCount		+= rejectedCount.get();
+		result.gRenderMillis	= renderNanos.get() / 1000000L;
+		result.gQueueMillis		= (queuedTime - startTime) / 1000000L;
+		result.gDepositMillis	= (endTime - queuedTime) / 1000000L;
+		result.gElapsedMillis	= (endTime - startTime) / 1000000L;
+
+		logMessage("Mail merge completed: " + result);
+		return (result);
+	}
+
+	/**
+	 * Create a cipher instance (used for the cipher instances per thread).
+	 *
+	 * @param	transformation	Transformation, e.g. "AES/GCM/NoPadding"
+	 * @return	Cipher
+	 */
+	private static Cipher newCipher(String transformation) {
+
+		try {
+			return (Cipher.getInstance(transformation));
+		} catch (Exception e) {
+			throw new IllegalStateException("Cipher " + transformation + " not available", e);
+		}
+	}
+
+	/**
+	 * Create a cache of derived AES keys by secret key, bounded to <code>AES_KEY_CACHE_SIZE</code> keys (least recently
+	 * used key removed first).
+	 *
+	 * @return	Key cache
+	 */
+	private static Map<ByteBuffer, SecretKeySpec> newKeyCache() {
+
+		return (Collections.synchronizedMap(new LinkedHashMap<ByteBuffer, SecretKeySpec>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<ByteBuffer, SecretKeySpec> eldest) {
+				return (size() > AES_KEY_CACHE_SIZE);
+			}
+		}));
+	}
+
+	/**
+	 * Create a MAC instance (used for the MAC instances per thread).
+	 *
+	 * @param	algorithm	Algorithm, e.g. "HmacSHA256"
+	 * @return	MAC
+	 */
+	private static Mac newMac(String algorithm) {
+
+		try {
+			return (Mac.getInstance(algorithm));
+		} catch (Exception e) {
+			throw new IllegalStateException("MAC " + algorithm + " not available", e);
+		}
+	}
+
+	/**
+	 * Check the message arguments, set the defaults and create the message.
+	 *
+	 * @param	principal	Principal name or null
+	 * @param	from		Senders name
+	 * @param	replyTo		Reply address or null
+	 * @param	to			Recipient name
+	 * @param	cc			Copy recipient or null
+	 * @param	bcc			Blind carbon copy recipient or null
+	 * @param	subject		Subject
+	 * @param	contentType	Content type of body, e.g. "text/html"
+	 * @param	body		Body data
+	 * @return	Message or null if sender or recipient is missing
+	 */
+	private final DbMailMessage newMailMessage(String principal, String from, String replyTo, String to, String cc, String bcc, String subject, String contentType, byte[] body) {
+
+		// Check arguments and set defaults
+		if ((principal != null) && (principal.length() == 0))
+			principal = null;
+
+		if ((from == null) || (from.length() == 0))
+			return null;
+
+		if ((to == null) || (to.length() == 0))
+			return null;
+
+		if ((replyTo != null) && (replyTo.length() == 0))
+			replyTo = null;
+
+		if ((cc != null) && (cc.length() == 0))
+			cc = null;
+
+		if ((bcc != null) && (bcc.length() == 0))
+			bcc = null;
+
+		if ((subject != null) && (subject.length() == 0))
+			subject = "(No subject)";
+
+		if ((contentType == null) || (contentType.length() == 0))
+			contentType = "Text/Plain";
+
+		if ((body == null) || (body.length == 0)) {
+			body = "(No content)".getBytes();
+		}
+
+		return (new DbMailMessage(principal, from, replyTo, to, cc, bcc, subject, contentType, body));
+	}
+
+	/**
+	 * Post an event of the JAddin main thread to the event inbox. The events are only posted if the add-in uses the
+	 * event inbox, except the stop request which is always posted and kept for all later calls of
+	 * <code>waitForEvent()</code>. This method is called by JAddin.
+	 *
+	 * @param	eventType	Event type
+	 * @param	command		Command line for command events, null otherwise
+	 */
+	final void postAddinEvent(AddinEvent.EventType eventType, String command) {
+
+		AddinEvent event = new AddinEvent(eventType, command, null);
+
+		if (eventType == AddinEvent.EventType.STOP)
+			gStopEvent = event;
+		else if (!gEventInboxEnabled)
+			return;
+
+		// A stop request replaces the oldest event if the inbox is full
+		while (!gEventInbox.offer(event)) {
+			if (eventType != AddinEvent.EventType.STOP) {
+				logMessage("Event inbox is full, " + event + " discarded");
+				return;
+			}
+
+			gEventInbox.poll();
+		}
+	}
+
+	/**
+	 * Post a custom event to the event inbox of the add-in, e.g. from a worker thread. The event is received by
+	 * <code>waitForEvent()</code>.
+	 *
+	 * @param	name	Event name
+	 * @param	payload	Event data or null
+	 * @return	True if the event was posted, false if the inbox is full
+	 */
+	public final boolean postEvent(String name, Object payload) {
+
+		gEventInboxEnabled = true;
+
+		if (gEventInbox.offer(new AddinEvent(AddinEvent.EventType.CUSTOM, name, payload)))
+			return true;
+
+		logDebug("Event inbox is full, event " + name + " discarded");
+		return false;
+	}
+
+	/**
+	 * Read the messages journaled in the outbox directory.
+	 *
+	 * @return	Messages (unreadable files are logged and removed)
+	 */
+	private final List<DbMailMessage> readOutboxMessages() {
+
+		List<DbMailMessage>	mailMessages	= new ArrayList<DbMailMessage>();
+		File[]				outboxFiles		= getOutboxDirectory().listFiles((directory, name) -> name.endsWith(".msg"));
+
+		if (outboxFiles == null)
+			return (mailMessages);
+
+		for (File outboxFile : outboxFiles) {
+
+			Properties properties = new Properties();
+
+			try (FileInputStream inputStream = new FileInputStream(outboxFile)) {
+				properties.load(inputStream);
+
+				DbMailMessage mailMessage = new DbMailMessage(properties.getProperty("Principal"),
+						properties.getProperty("From"),
+						properties.getProperty("ReplyTo"),
+						properties.getProperty("To"),
+						properties.getProperty("CC"),
+						properties.getProperty("BCC"),
+						properties.getProperty("Subject"),
+						properties.getProperty("ContentType"),
+						Base64.getDecoder().decode(properties.getProperty("Body", "")));
+
+				mailMessage.gOutboxFile = outboxFile;
+				mailMessages.add(mailMessage);
+				gOutboxDepth.incrementAndGet();
+
+			} catch (Exception e) {
+				logMessage("Unable to read outbox message " + outboxFile + ": " + e.getMessage());
+				outboxFile.delete();
+			}
+		}
+
+		if (!mailMessages.isEmpty())
+			logMessage(mailMessages.size() + " message(s) from outbox queued for delivery");
+
+		return (mailMessages);
+	}
+
+	/**
+	 * Read a channel and pass its content in chunks of at most <code>STREAM_CHUNK_SIZE</code> bytes to the consumer.
+	 * The channel is read into a direct buffer of this thread (also for file channels: mapped windows would only be
+	 * released by the garbage collector and keep the files locked on Windows).
+	 *
+	 * @param	input		Channel to read
+	 * @param	consumer	Consumer of the chunks (must consume the chunk before returning)
+	 * @return	Number of bytes read
+	 * @throws	Exception	Read error or error of the consumer
+	 */
+	private final long readChunks(ReadableByteChannel input, ChunkConsumer consumer) throws Exception {
+
+		long byteCount = 0;
+
+		ByteBuffer chunk = gStreamBuffers.get()[0];
+		chunk.clear();
+
+		while (input.read(chunk) != -1) {
+
+			chunk.flip();
+			byteCount += chunk.remaining();
+
+			if (chunk.hasRemaining())
+				consumer.accept(chunk);
+
+			chunk.clear();
+		}
+
+		return (byteCount);
+	}
+
+	/**
+	 * Fill a buffer from a channel.
+	 *
+	 * @param	input		Channel to read
+	 * @param	buffer		Buffer to be filled up to its limit
+	 * @return	True if the buffer is filled, false if the channel ended before
+	 * @throws	IOException	Read error
+	 */
+	private static boolean readFully(ReadableByteChannel input, ByteBuffer buffer) throws IOException {
+
+		while (buffer.hasRemaining()) {
+			if (input.read(buffer) == -1)
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Add the bytes and the time of a streaming call to the metrics.
+	 *
+	 * @param	byteCount	Number of bytes processed
+	 * @param	startTime	Start time of the call (System.nanoTime())
+	 */
+	private final void recordStreamMetrics(long byteCount, long startTime) {
+		gStreamBytes.addAndGet(byteCount);
+		gStreamNanos.addAndGet(System.nanoTime() - startTime);
+	}
+
+	/**
+	 * Recycle a chunk of Domino objects with one native call and stop tracking them.
+	 *
+	 * @param	session			Domino session or null to recycle the objects one by one
+	 * @param	chunkVector		Domino objects to be recycled (null elements are ignored)
+	 * @return	Indicator (Success or failure)
+	 */
+	private final boolean recycleChunk(Session session, Vector<Base> chunkVector) {
+
+		boolean returnFlag = true;
+
+		try {
+			if (session == null)
+				throw new IllegalStateException("No Domino session");
+
+			session.recycle(chunkVector);
+
+			for (Base object : chunkVector)
+				untrackHandle(object);
+
+			gRecycledObjects.addAndGet(chunkVector.size());
+
+		} catch (Exception e) {
+			logDebug("Unable to recycle " + chunkVector.size() + " Domino objects at once: " + e.getMessage());
+
+			// Recycle the objects one by one
+			for (Base object : chunkVector) {
+				if (object != null)
+					returnFlag &= dbRecycleObjects(object);
+			}
+		}
+
+		return (returnFlag);
+	}
+
+	/**
+	 * Recycle a collection of Domino objects in chunks with one <code>Session.recycle(Vector)</code> call per chunk. If a
+	 * chunk can not be recycled at once, its objects are recycled one by one. Elements which are no Domino objects
+	 * (e.g. nested Vectors) are passed to <code>dbRecycleObjects()</code>.
+	 *
+	 * @param	dominoObjects	Domino objects to be recycled
+	 * @return	Indicator (Success or failure)
+	 */
+	private final boolean recycleCollection(Collection<?> dominoObjects) {
+
+		// Check arguments
+		if (dominoObjects.isEmpty())
+			return true;
+
+		boolean			returnFlag	= true;
+		long			startTime	= System.nanoTime();
+		Session			session		= dbGetSession();
+		Vector<Base>	chunkVector	= new Vector<Base>(Math.min(dominoObjects.size(), RECYCLE_CHUNK_SIZE));
+
+		for (Object object : dominoObjects) {
+
+			if (object == null)
+				continue;
+
+			if (!(object instanceof Base)) {
+				returnFlag &= dbRecycleObjects(object);
+				continue;
+			}
+
+			chunkVector.add((Base) object);
+
+			if (chunkVector.size() == RECYCLE_CHUNK_SIZE) {
+				returnFlag &= recycleChunk(session, chunkVector);
+				chunkVector.clear();
+			}
+		}
+
+		if (!chunkVector.isEmpty())
+			returnFlag &= recycleChunk(session, chunkVector);
+
+		gRecycleTimeNanos.addAndGet(System.nanoTime() - startTime);
+		return (returnFlag);
+	}
+
+	/**
+	 * Record the result of a database call in the circuit breaker.
+	 *
+	 * @param	circuitBreaker	Circuit breaker returned by <code>acquireCircuitBreaker()</code> or null
+	 * @param	startTime		Start time of the call (System.nanoTime())
+	 * @param	failed			Indicator if the call failed
+	 */
+	private final void releaseCircuitBreaker(DbCircuitBreaker circuitBreaker, long startTime, boolean failed) {
+
+		if (circuitBreaker != null) {
+			circuitBreaker.recordResult(System.nanoTime() - startTime, !failed);
+			watchdogEnd();
+		}
+	}
+
+	/**
+	 * Report a call which has exceeded its budget.
+	 *
+	 * @param	thread			Thread running the call
+	 * @param	watch			Watched call
+	 * @param	elapsedMillis	Running time of the call
+	 */
+	private final void reportStall(Thread thread, DbWatch watch, long elapsedMillis) {
+
+		gWatchdogStalls.incrementAndGet();
+		gWatchdogLongestMillis.accumulateAndGet(elapsedMillis, Math::max);
+
+		logMessage("Watchdog: " + watch.gOperation + " in thread " + thread.getName() + " running for " + elapsedMillis + " ms (budget " + watch.gBudgetMillis + " ms)");
+
+		String threadDump = getThreadDump(thread.getId());
+
+		if (gWatchdogDumpToFile) {
+			File dumpFile = new File(getDataDirectory(), gUserAddinName + "-stall-" + System.currentTimeMillis() + ".txt");
+
+			try (FileOutputStream outputStream = new FileOutputStream(dumpFile)) {
+				outputStream.write((watch.gOperation + " running for " + elapsedMillis + " ms\n\n" + threadDump).getBytes(StandardCharsets.UTF_8));
+				logMessage("Watchdog: Thread dump written to " + dumpFile);
+			} catch (IOException e) {
+				logMessage("Watchdog: Unable to write thread dump to " + dumpFile + ": " + e.getMessage());
+			}
+		} else {
+			for (String line : threadDump.split("\n"))
+				logMessage("Watchdog: " + line);
+		}
+
+		if (gWatchdogInterrupt) {
+			logMessage("Watchdog: Sending interrupt to thread " + thread.getName());
+			thread.interrupt();
+		}
+	}
+
+	/**
+	 * This method is called from the JAddin framework indirectly thru start(). Its main purpose is to call the
+	 * user code thru addinStart().
+	 */
+	@Override
+	public final void runNotes() {
+		
+		logDebug("Entered runNotes()");
+		
+		// Check if addinInitialize() has failed
+		if (gStartupError) {
+			addinCleanup();
+			return;
+		}
+		
+		// Set the initial state
+		setAddinState("Initialization in progress");
+
+		// Cache the data directory for the background threads and deliver the messages left in the outbox (read once
+		// before the user code can journal new messages)
+		List<DbMailMessage> outboxMessages = readOutboxMessages();
+
+		if (!outboxMessages.isEmpty()) {
+			gMailRetryQueue.addAll(outboxMessages);
+			startMailSubmitter();
+		}
+
+		// Set the number of worker threads from Notes.ini (AddinName_WorkerThreads)
+		try {
+			String workerThreads = gDominoSession.getEnvironmentString(gUserAddinName + WORKER_THREADS_SETTING, true).trim();
+
+			if (!workerThreads.isEmpty())
+				setWorkerThreads(Integer.parseInt(workerThreads));
+
+		} catch (Exception e) {
+			logMessage("Invalid Notes.ini setting " + gUserAddinName + WORKER_THREADS_SETTING + ": " + e.getMessage());
+		}
+
+		// Start the watchdog of the callbacks and database calls
+		startWatchdog();
+		
+		// Call the user main method addinStart()
+		try {
+			logDebug("Calling " + gUserAddinName + ".addinStart()");
+			addinStart();
+		} catch (Exception e) {
+			// Write the stack trace directly to the standard output
+			e.printStackTrace();
+		}
+				
+		// Cleanup the resources
+		addinCleanup();
+	}
+	
+	/**
+	 * Set the add-in status message text. This text is shown in response to the Domino console command <code>"show tasks"</code>.
+	 * 
+	 * @param 	message		Status message
+	 */
+	public final void setAddinState(String message) {
+		if (isJAddinAlive()) {
+			gJAddinMain.setAddinState(gDominoTaskID, message);
+		}
+	}
+	
+	/**
+	 * Set the debug state
+	 * 
+	 * @param	debugState	Debug state 
+	 */
+	public final void setDebugState(boolean debugState) {
+		if (isJAddinAlive()) {
+			gJAddinMain.setDebugState(debugState);
+		}
+	}
+	
+	/**
+	 * Set the Domino statistics show in response to 'Show Stat' command.
+	 * 
+	 * @param statsName		Name of statistics
+	 * @param value			Statistics value
+	 */
+	public final void setDominoStatistic(String statsName, Double value) {
+		if (isJAddinAlive()) {
+			gJAddinMain.setDominoStatistic(gUserAddinName, statsName, value);
+		}
+	}
+		
+	/**
+	 * Set the Domino statistics show in response to 'Show Stat' command.
+	 * 
+	 * @param statsName		Name of statistics
+	 * @param text			Statistics text
+	 */
+	public final void setDominoStatistic(String statsName, String text) {
+		if (isJAddinAlive()) {
+			gJAddinMain.setDominoStatistic(gUserAddinName, statsName, text);
+		}
+	}
+
+	/**
+	 * Set the number of worker threads of <code>getWorkerExecutor()</code>. A running executor is resized, idle threads
+	 * above the new size terminate.
+	 *
+	 * @param	threadCount	Number of worker threads (default is the Notes.ini setting AddinName_WorkerThreads or the number
+	 * 						of processors)
+	 */
+	public final synchronized void setWorkerThreads(int threadCount) {
+
+		if (threadCount < 1)
+			return;
+
+		gWorkerThreads = threadCount;
+
+		if (gWorkerExecutor == null)
+			return;
+
+		// Keep core size <= maximum size while resizing
+		if (threadCount > gWorkerExecutor.getMaximumPoolSize()) {
+			gWorkerExecutor.setMaximumPoolSize(threadCount);
+			gWorkerExecutor.setCorePoolSize(threadCount);
+		} else {
+			gWorkerExecutor.setCorePoolSize(threadCount);
+			gWorkerExecutor.setMaximumPoolSize(threadCount);
+		}
+	}
+
+	/**
+	 * Start the watchdog thread checking the running time of the watched calls. It is a NotesThread, because the stall
+	 * reports are written to the Domino console.
+	 */
+	private final synchronized void startWatchdog() {
+
+		if ((gWatchdog != null) || gCleanupDone)
+			return;
+
+		gWatchdog = new NotesThread(() -> {
+			while (!Thread.currentThread().isInterrupted()) {
+				try {
+					Thread.sleep(WATCHDOG_INTERVAL_MS);
+				} catch (InterruptedException e) {
+					break;
+				}
+
+				long currentTime = System.nanoTime();
+
+				// Check the watched calls of every thread including the nested calls
+				for (Map.Entry<Thread, DbWatch> entry : gWatches.entrySet()) {
+					for (DbWatch watch = entry.getValue(); watch != null; watch = watch.gPrevious) {
+
+						long elapsedMillis = (currentTime - watch.gStartTime) / 1000000L;
+
+						if (!watch.gReported && (elapsedMillis > watch.gBudgetMillis)) {
+							watch.gReported = true;
+							reportStall(entry.getKey(), watch, elapsedMillis);
+						}
+					}
+				}
+			}
+		}, gUserAddinName + "-Watchdog");
+
+		gWatchdog.setDaemon(true);
+		gWatchdog.start();
+	}
+
+	/**
+	 * Start the mail submitter thread if not already running.
+	 *
+	 * @return	True if the mail submitter is running, false if the add-in terminates
+	 */
+	private final synchronized boolean startMailSubmitter() {
+
+		if (gMailSubmitter != null)
+			return (!gMailSubmitter.gStopRequested);
+
+		if (gCleanupDone)
+			return false;
+
+		gMailSubmitter = new DbMailSubmitter();
+		gMailSubmitter.setName(gUserAddinName + "-MailSubmitter");
+		gMailSubmitter.setDaemon(true);
+		gMailSubmitter.start();
+
+		logDebug("Mail submitter started");
+		return true;
+	}
+
+	/**
+	 * Stop the I/O executor. Running tasks are interrupted after the timeout.
+	 */
+	private final void stopIOExecutor() {
+
+		ExecutorService ioExecutor = null;
+
+		// Do not hold the lock while waiting (the tasks may need it)
+		synchronized (this) {
+			if (gIOExecutor == null)
+				return;
+
+			ioExecutor = gIOExecutor;
+			ioExecutor.shutdown();
+		}
+
+		if (!awaitTermination(ioExecutor, IO_STOP_TIMEOUT_MS))
+			logMessage("I/O tasks interrupted, " + ioExecutor.shutdownNow().size() + " task(s) not executed");
+	}
+
+	/**
+	 * Stop the mail submitter thread after the queued messages are delivered.
+	 */
+	private final void stopMailSubmitter() {
+
+		DbMailSubmitter mailSubmitter = null;
+
+		// Do not hold the lock while waiting (the submitter may need it)
+		synchronized (this) {
+			if (gMailSubmitter == null)
+				return;
+
+			mailSubmitter = gMailSubmitter;
+			mailSubmitter.gStopRequested = true;
+			mailSubmitter.interrupt();
+		}
+
+		if (!awaitTermination(mailSubmitter, MAIL_STOP_TIMEOUT_MS))
+			logMessage("Mail submitter could not be stopped, " + gMailQueue.size() + " message(s) not delivered");
+		else
+			logDebug("Mail submitter stopped");
+	}
+
+	/**
+	 * Stop the watchdog thread.
+	 */
+	private final void stopWatchdog() {
+
+		NotesThread watchdog = null;
+
+		// Do not hold the lock while waiting for the thread
+		synchronized (this) {
+			if (gWatchdog == null)
+				return;
+
+			watchdog	= gWatchdog;
+			gWatchdog	= null;
+		}
+
+		watchdog.interrupt();
+
+		if (!awaitTermination(watchdog, WATCHDOG_INTERVAL_MS))
+			logDebug("Watchdog could not be stopped");
+	}
+
+	/**
+	 * Stop the worker threads after the queued tasks are completed.
+	 */
+	private final void stopWorkerExecutor() {
+
+		ThreadPoolExecutor workerExecutor = null;
+
+		// Do not hold the lock while waiting (the tasks may need it to send messages or to hash)
+		synchronized (this) {
+			if (gWorkerExecutor == null)
+				return;
+
+			workerExecutor = gWorkerExecutor;
+			workerExecutor.shutdown();
+		}
+
+		if (!awaitTermination(workerExecutor, WORKER_STOP_TIMEOUT_MS)) {
+			logMessage("Worker threads could not be stopped, " + workerExecutor.shutdownNow().size() + " task(s) not executed");
+			return;
+		}
+
+		logDebug("Worker threads stopped");
+	}
+
+	/**
+	 * Encode passed buffer to padded Base64 string
+	 * 
+	 * @param buffer	Buffer to convert
+	 * @return Base64 encoded string in upper-case
+	 */
+	public final String toBase64(byte[] buffer) {
+		
+		try {
+			return (Base64.getEncoder().encodeToString(buffer));
+		} catch (Exception e) {
+			logMessage("Unable to encode buffer to Base64: " + e.getMessage());
+			return null;
+		}
+	}
+	
+	/**
+	 * Encode the data between position and limit of the source buffer to padded Base64 into the target buffer without
+	 * intermediate copies. Both buffers may be heap or direct buffers.
+	 *
+	 * @param	source	Data to encode (position is advanced to the limit)
+	 * @param	target	Target buffer (position is advanced by the number of encoded bytes)
+	 * @return	Number of encoded bytes or -1 if the target buffer is too small (no buffer is changed)
+	 */
+	public final int toBase64(ByteBuffer source, ByteBuffer target) {
+
+		int encodedLength = (source.remaining() + 2) / 3 * 4;
+
+		if (target.remaining() < encodedLength) {
+			logMessage("Unable to encode buffer to Base64: Target buffer too small for " + encodedLength + " bytes");
+			return -1;
+		}
+
+		while (source.remaining() >= 3) {
+			int bits = ((source.get() & 0xFF) << 16) | ((source.get() & 0xFF) << 8) | (source.get() & 0xFF);
+
+			target.put(BASE64_ALPHABET[(bits >> 18) & 0x3F]);
+			target.put(BASE64_ALPHABET[(bits >> 12) & 0x3F]);
+			target.put(BASE64_ALPHABET[(bits >> 6) & 0x3F]);
+			target.put(BASE64_ALPHABET[bits & 0x3F]);
+		}
+
+		if (source.hasRemaining()) {
+			int remaining	= source.remaining();
+			int bits		= (source.get() & 0xFF) << 16;
+
+			if (remaining == 2)
+				bits |= (source.get() & 0xFF) << 8;
+
+			target.put(BASE64_ALPHABET[(bits >> 18) & 0x3F]);
+			target.put(BASE64_ALPHABET[(bits >> 12) & 0x3F]);
+			target.put((remaining == 2) ? BASE64_ALPHABET[(bits >> 6) & 0x3F] : (byte) '=');
+			target.put((byte) '=');
+		}
+
+		return (encodedLength);
+	}
+
+	/**
+	 * Wrap an output stream to encode data to padded Base64 while it is written, e.g. a large payload.
+	 *
+	 * @param	outputStream	Stream receiving the Base64 data
+	 * @return	Stream encoding the written data (must be closed to write the padding, closes the wrapped stream)
+	 */
+	public final OutputStream toBase64(OutputStream outputStream) {
+		return (Base64.getEncoder().wrap(outputStream));
+	}
+
+	/**
+	 * Encrypt or decrypt a channel with the legacy AES-128 ECB cipher in fixed-size chunks.
+	 *
+	 * @param	input		Input channel
+	 * @param	output		Output channel
+	 * @param	secretKey	Secret key for encryption
+	 * @param	cipherMode	Cipher.ENCRYPT_MODE or Cipher.DECRYPT_MODE
+	 * @return	Number of bytes read
+	 * @throws	Exception	Read, write or cipher error
+	 */
+	private final long transformAES(ReadableByteChannel input, WritableByteChannel output, byte[] secretKey, int cipherMode) throws Exception {
+
+		long		startTime		= System.nanoTime();
+		ByteBuffer	outputBuffer	= gStreamBuffers.get()[2];
+		Cipher		cipher			= gECBCipher.get();
+
+		cipher.init(cipherMode, getAESKey(secretKey, null));
+
+		long byteCount = readChunks(input, chunk -> {
+			outputBuffer.clear();
+			cipher.update(chunk, outputBuffer);
+			outputBuffer.flip();
+			writeFully(output, outputBuffer);
+		});
+
+		outputBuffer.clear();
+		cipher.doFinal(ByteBuffer.allocate(0), outputBuffer);
+		outputBuffer.flip();
+		writeFully(output, outputBuffer);
+
+		recordStreamMetrics(byteCount, startTime);
+		return (byteCount);
+	}
+
+	/**
+	 * Convert a Domino item or column value to a Java value. Single values are unwrapped, empty values become null and
+	 * date/time values are converted to <code>java.util.Date</code> and recycled.
+	 *
+	 * @param	value	Domino value
+	 * @return	Java value
+	 * @throws	NotesException	Domino error
+	 */
+	private final Object toJavaValue(Object value) throws NotesException {
+
+		if (value instanceof Vector) {
+			Vector<?> valueVector = (Vector<?>) value;
+
+			if (valueVector.isEmpty())
+				return null;
+
+			if (valueVector.size() == 1)
+				return (toJavaValue(valueVector.get(0)));
+
+			Vector<Object> javaVector = new Vector<Object>(valueVector.size());
+
+			for (Object innerValue : valueVector)
+				javaVector.add(toJavaValue(innerValue));
+
+			return (javaVector);
+		}
+
+		if (value instanceof DateTime) {
+			Date date = ((DateTime) value).toJavaDate();
+			dbRecycleObjects(value);
+			return (date);
+		}
+
+		return (value);
+	}
+
+	/**
+	 * Convert a Domino item or column value to a list of Java values, so the type of a mapped value does not depend on
+	 * the data of a document: single values become a list with one element and empty values an empty list.
+	 *
+	 * @param	value	Domino value
+	 * @return	Java values
+	 * @throws	NotesException	Domino error
+	 */
+	private final Vector<Object> toJavaValues(Object value) throws NotesException {
+
+		if (value == null)
+			return (new Vector<Object>(0));
+
+		if (!(value instanceof Vector)) {
+			Vector<Object> javaVector = new Vector<Object>(1);
+			javaVector.add(toJavaValue(value));
+			return (javaVector);
+		}
+
+		Vector<?>		valueVector	= (Vector<?>) value;
+		Vector<Object>	javaVector	= new Vector<Object>(valueVector.size());
+
+		for (Object innerValue : valueVector)
+			javaVector.add(toJavaValue(innerValue));
+
+		return (javaVector);
+	}
+
+	/**
+	 * Stop tracking a recycled Domino object (leak report and arenas of the current thread).
+	 *
+	 * @param	handle	Domino object
+	 */
+	private final void untrackHandle(Base handle) {
+
+		if (!gLiveHandles.isEmpty())
+			gLiveHandles.remove(new DbHandleReference(handle, null, null));
+
+		for (DbArena arena = gCurrentArena.get(); arena != null; arena = arena.gParentArena)
+			arena.gHandles.remove(handle);
+	}
+
+	/**
+	 * Track a Domino object returned by a dbXXXX method until it is recycled. The object is added to the current arena
+	 * (if any) and, in debug mode, weakly referenced with its allocation site for the leak report.
+	 *
+	 * @param	handle	Domino object or null
+	 * @return	Passed Domino object
+	 */
+	private final <T extends Base> T trackHandle(T handle) {
+		return (trackHandle(handle, gCurrentArena.get()));
+	}
+
+	/**
+	 * Track a Domino object until it is recycled.
+	 *
+	 * @param	handle	Domino object or null
+	 * @param	arena	Arena recycling the object or null
+	 * @return	Passed Domino object
+	 */
+	private final <T extends Base> T trackHandle(T handle, DbArena arena) {
+
+		if (handle == null)
+			return null;
+
+		gAllocatedHandles.incrementAndGet();
+
+		if (getDebugState()) {
+			expungeHandles();
+			gLiveHandles.add(new DbHandleReference(handle, gReleasedHandles, new Throwable("Allocation site")));
+		}
+
+		if (arena != null)
+			arena.gHandles.add(handle);
+
+		return (handle);
+	}
+
+	/**
+	 * Update the Domino statistics of the framework. This method is called by the JAddin main thread during the
+	 * heartbeat processing.
+	 */
+	final void updateStatistics() {
+		expungeHandles();
+		setDominoStatistic(JAddinThread.STAT_LIVE_HANDLES, (double) gLiveHandles.size());
+		setDominoStatistic(JAddinThread.STAT_ALLOC_HANDLES, (double) gAllocatedHandles.get());
+		setDominoStatistic(JAddinThread.STAT_RECYCLED, (double) gRecycledObjects.get());
+		setDominoStatistic(JAddinThread.STAT_RECYCLE_TIME, (double) (gRecycleTimeNanos.get() / 1000000L));
+
+		for (DbCircuitBreaker circuitBreaker : gCircuitBreakers.values())
+			circuitBreaker.updateStatistics();
+
+		setDominoStatistic(JAddinThread.STAT_MAIL_QUEUED, (double) gMailQueue.size());
+		setDominoStatistic(JAddinThread.STAT_MAIL_DEPOSITED, (double) gMailDeposited.get());
+		setDominoStatistic(JAddinThread.STAT_MAIL_FAILED, (double) gMailFailed.get());
+		setDominoStatistic(JAddinThread.STAT_MAIL_RETRIES, (double) gMailRetries.get());
+		setDominoStatistic(JAddinThread.STAT_MAIL_OUTBOX, (double) gOutboxDepth.get());
+
+		long streamNanos = gStreamNanos.get();
+		setDominoStatistic(JAddinThread.STAT_STREAM_BYTES, (double) gStreamBytes.get());
+		setDominoStatistic(JAddinThread.STAT_STREAM_RATE, (streamNanos == 0) ? 0d : gStreamBytes.get() * 1000d / streamNanos);
+
+		setDominoStatistic(JAddinThread.STAT_WATCHDOG_STALLS, (double) gWatchdogStalls.get());
+		setDominoStatistic(JAddinThread.STAT_WATCHDOG_LONGEST, (double) gWatchdogLongestMillis.get());
+		// Count the nested calls of every thread
+		int activeCalls = 0;
+
+		for (DbWatch watch : gWatches.values()) {
+			for (; watch != null; watch = watch.gPrevious)
+				activeCalls++;
+		}
+
+		setDominoStatistic(JAddinThread.STAT_WATCHDOG_ACTIVE, (double) activeCalls);
+
+		ThreadPoolExecutor workerExecutor = gWorkerExecutor;
+
+		if (workerExecutor != null) {
+			setDominoStatistic(JAddinThread.STAT_WORKER_THREADS, (double) workerExecutor.getPoolSize());
+			setDominoStatistic(JAddinThread.STAT_WORKER_ACTIVE, (double) workerExecutor.getActiveCount());
+			setDominoStatistic(JAddinThread.STAT_WORKER_QUEUED, (double) workerExecutor.getQueue().size());
+			setDominoStatistic(JAddinThread.STAT_WORKER_DONE, (double) workerExecutor.getCompletedTaskCount());
+		}
+
+		if (gRouterMailBoxes != null) {
+			for (DbRouterMailBox routerMailBox : gRouterMailBoxes) {
+				long depositCount = routerMailBox.gDeposited.get();
+				setDominoStatistic(JAddinThread.STAT_MAIL_PREFIX + routerMailBox.gName + ".Deposited", (double) depositCount);
+				setDominoStatistic(JAddinThread.STAT_MAIL_PREFIX + routerMailBox.gName + ".LatencyMs", (depositCount == 0) ? 0d : (double) (routerMailBox.gLatencyNanos.get() / depositCount / 1000000L));
+			}
+		}
+	}
+
+	/**
+	 * Wait for the next event of the add-in: console commands, the beginning of a new hour or day, the stop request and
+	 * custom events posted by <code>postEvent()</code>. The first call enables the event inbox, so the add-in can block
+	 * here instead of polling. The callback methods (<code>addinCommand()</code>, ...) are still called.
+	 *
+	 * Once the stop is requested, the remaining events and then the stop event are returned without waiting.
+	 *
+	 * @param	timeoutMillis	Maximum time to wait
+	 * @return	Event or null if the timeout has elapsed (a stop event is returned if the thread is interrupted)
+	 */
+	public final AddinEvent waitForEvent(long timeoutMillis) {
+
+		gEventInboxEnabled = true;
+
+		// The stop request is sticky, so it is not lost if it was posted before the first call
+		AddinEvent stopEvent = gStopEvent;
+
+		if (stopEvent != null) {
+			AddinEvent event = gEventInbox.poll();
+			return ((event == null) ? stopEvent : event);
+		}
+
+		try {
+			return (gEventInbox.poll(timeoutMillis, TimeUnit.MILLISECONDS));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return (new AddinEvent(AddinEvent.EventType.STOP, null, null));
+		}
+	}
+
+	/**
+	 * Delay the execution of the thread
+	 * 
+	 * @param	waitTime	Wait time in milliseconds
+	 */
+	public final void waitMilliSeconds(long waitTime) {
+		if (isJAddinAlive()) {
+			gJAddinMain.waitMilliSeconds(waitTime);
+		}
+	}
+
+	/**
+	 * Encrypt one chunk of the AES-GCM stream format and write it with its header.
+	 *
+	 * @param	cipher			AES-GCM cipher
+	 * @param	aesKey			AES key
+	 * @param	iv				IV buffer holding the nonce prefix in the first 8 bytes
+	 * @param	chunkIndex		Index of the chunk
+	 * @param	lastChunk		True for the last chunk
+	 * @param	chunkBuffer		Clear text of the chunk
+	 * @param	outputBuffer	Buffer for the encrypted chunk
+	 * @param	output			Output channel
+	 * @throws	Exception		Write or cipher error
+	 */
+	private static void writeGCMChunk(Cipher cipher, SecretKeySpec aesKey, byte[] iv, int chunkIndex, boolean lastChunk, ByteBuffer chunkBuffer, ByteBuffer outputBuffer, WritableByteChannel output) throws Exception {
+
+		ByteBuffer.wrap(iv, 8, 4).putInt(chunkIndex);
+		cipher.init(Cipher.ENCRYPT_MODE, aesKey, new GCMParameterSpec(AES_GCM_TAG_BITS, iv));
+		cipher.updateAAD(new byte[] {(byte) (lastChunk ? 1 : 0)});
+
+		outputBuffer.clear();
+		outputBuffer.putInt(0);
+		int chunkLength = cipher.doFinal(chunkBuffer, outputBuffer);
+		outputBuffer.putInt(0, lastChunk ? (chunkLength | 0x80000000) : chunkLength);
+		outputBuffer.flip();
+		writeFully(output, outputBuffer);
+	}
+
+	/**
+	 * Write a buffer completely to a channel.
+	 *
+	 * @param	output		Channel to write
+	 * @param	buffer		Buffer to be written up to its limit
+	 * @throws	IOException	Write error
+	 */
+	private static void writeFully(WritableByteChannel output, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining())
+			output.write(buffer);
+	}
+
+	/**
+	 * Write one MIME part as child entity. The content is copied in chunks thru the content encoding into a Domino
+	 * stream. The content of files and input streams is encoded into a temporary file opened as Domino stream, so
+	 * large attachments are not held in memory; byte array parts are written to an in-memory Domino stream.
+	 *
+	 * @param	session			Domino session of the current thread
+	 * @param	parentEntity	Multipart parent entity
+	 * @param	mimePart		Part to be written
+	 * @throws	NotesException	Domino error or content not readable
+	 */
+	private final void writeMimePart(Session session, MIMEEntity parentEntity, DbMimePart mimePart) throws NotesException {
+
+		MIMEEntity	dominoMIMEEntity	= null;
+		MIMEHeader	dispositionHeader	= null;
+		MIMEHeader	contentIDHeader		= null;
+		Stream		dominoStream		= null;
+		File		tempFile			= null;
+
+		try {
+			dominoMIMEEntity = parentEntity.createChildEntity();
+
+			if (mimePart.gDisposition != null) {
+				dispositionHeader = dominoMIMEEntity.createHeader("Content-Disposition");
+				dispositionHeader.setHeaderVal((mimePart.gFileName == null) ? mimePart.gDisposition : mimePart.gDisposition + "; filename=\"" + mimePart.gFileName + '\"');
+			}
+
+			if (mimePart.gContentID != null) {
+				contentIDHeader = dominoMIMEEntity.createHeader("Content-ID");
+				contentIDHeader.setHeaderVal('<' + mimePart.gContentID + '>');
+			}
+
+			dominoStream = session.createStream();
+
+			// Encode the content on the fly and pass it in chunks to the Domino stream or to the temporary file
+			OutputStream outputStream = null;
+
+			try (InputStream inputStream = mimePart.openContent()) {
+				if ((mimePart.gFile != null) || (mimePart.gInputStream != null)) {
+					tempFile		= File.createTempFile(gUserAddinName + "-mime-", ".tmp");
+					outputStream	= new BufferedOutputStream(new FileOutputStream(tempFile), MIME_CHUNK_SIZE);
+				} else
+					outputStream	= new BufferedOutputStream(new DbStreamOutputStream(dominoStream), MIME_CHUNK_SIZE);
+
+				if (mimePart.gEncoding == MIMEEntity.ENC_BASE64)
+					outputStream = Base64.getMimeEncoder().wrap(outputStream);
+				else
+					outputStream = new DbQuotedPrintableOutputStream(outputStream);
+
+				try (OutputStream encodingStream = outputStream) {
+					byte[]	buffer		= new byte[MIME_CHUNK_SIZE];
+					int		readCount	= 0;
+
+					while ((readCount = inputStream.read(buffer)) != -1)
+						encodingStream.write(buffer, 0, readCount);
+				}
+
+			} catch (IOException e) {
+				throw new NotesException(0, "Unable to read MIME part " + mimePart + ": " + e.getMessage());
+			}
+
+			if ((tempFile != null) && !dominoStream.open(tempFile.getPath(), "binary"))
+				throw new NotesException(0, "Unable to open temporary file " + tempFile + " of MIME part " + mimePart);
+
+			dominoMIMEEntity.setContentFromBytes(dominoStream, mimePart.gContentType, mimePart.gEncoding);
+
+			if (tempFile == null)
+				dominoStream.truncate();
+
+			dominoStream.close();
+
+		} finally {
+			dbRecycleObjects(contentIDHeader, dispositionHeader, dominoStream, dominoMIMEEntity);
+
+			if ((tempFile != null) && !tempFile.delete())
+				tempFile.deleteOnExit();
+		}
+	}
+
+	/**
+	 * Write the parts of a multipart message. The message parts are written to a "multipart/mixed" entity, nested in
+	 * a "multipart/related" entity if inline parts are referenced, followed by the attachments.
+	 *
+	 * @param	session			Domino session of the current thread
+	 * @param	bodyEntity		Body entity of the mail document
+	 * @param	mimeParts		Parts to be written
+	 * @throws	NotesException	Domino error or content not readable
+	 */
+	private final void writeMimeParts(Session session, MIMEEntity bodyEntity, List<DbMimePart> mimeParts) throws NotesException {
+
+		MIMEHeader	mixedHeader		= null;
+		MIMEEntity	relatedEntity	= null;
+		MIMEHeader	relatedHeader	= null;
+		MIMEEntity	parentEntity	= bodyEntity;
+
+		try {
+			mixedHeader = bodyEntity.createHeader("Content-Type");
+			mixedHeader.setHeaderVal("multipart/mixed");
+
+			for (DbMimePart mimePart : mimeParts) {
+				if (mimePart.gContentID != null) {
+					relatedEntity = bodyEntity.createChildEntity();
+					relatedHeader = relatedEntity.createHeader("Content-Type");
+					relatedHeader.setHeaderVal("multipart/related");
+					parentEntity = relatedEntity;
+					break;
+				}
+			}
+
+			for (DbMimePart mimePart : mimeParts) {
+				if (!DbMimePart.ATTACHMENT.equals(mimePart.gDisposition))
+					writeMimePart(session, parentEntity, mimePart);
+			}
+
+			for (DbMimePart mimePart : mimeParts) {
+				if (DbMimePart.ATTACHMENT.equals(mimePart.gDisposition))
+					writeMimePart(session, bodyEntity, mimePart);
+			}
+
+		} finally {
+			dbRecycleObjects(relatedHeader, relatedEntity, mixedHeader);
+		}
+	}
+
+	/**
+	 * Start watching a call of the current thread. Calls may be nested, every call must be ended by
+	 * <code>watchdogEnd()</code>. This method is also called by JAddin for the callbacks.
+	 *
+	 * @param	operation	Description of the call
+	 * @param	callback	True for a callback (callback budget), false for a database call (database budget)
+	 */
+	final void watchdogBegin(String operation, boolean callback) {
+
+		Thread currentThread = Thread.currentThread();
+		gWatches.put(currentThread, new DbWatch(operation, callback ? gWatchdogCallbackMillis : gWatchdogDbMillis, gWatches.get(currentThread)));
+	}
+
+	/**
+	 * End watching the last call of the current thread started by <code>watchdogBegin()</code>. This method is also
+	 * called by JAddin for the callbacks.
+	 */
+	final void watchdogEnd() {
+
+		Thread	currentThread	= Thread.currentThread();
+		DbWatch	watch			= gWatches.get(currentThread);
+
+		if (watch == null)
+			return;
+
+		if (watch.gPrevious == null)
+			gWatches.remove(currentThread);
+		else
+			gWatches.put(currentThread, watch.gPrevious);
+	}
+
+	/**
+	 * Journal a message to the outbox directory. The file is written under a temporary name, forced to disk and
+	 * renamed, so a partial file is never replayed.
+	 *
+	 * @param	mailMessage	Message to be journaled
+	 * @return	Indicator (Success or failure)
+	 */
+	private final boolean writeOutboxMessage(DbMailMessage mailMessage) {
+
+		File		outboxDirectory	= getOutboxDirectory();
+		File		outboxFile		= new File(outboxDirectory, UUID.randomUUID().toString() + ".msg");
+		File		tempFile		= new File(outboxDirectory, outboxFile.getName() + ".tmp");
+		Properties	properties		= new Properties();
+
+		String[][] fields = {
+				{"Principal", mailMessage.gPrincipal},
+				{"From", mailMessage.gFrom},
+				{"ReplyTo", mailMessage.gReplyTo},
+				{"To", mailMessage.gTo},
+				{"CC", mailMessage.gCc},
+				{"BCC", mailMessage.gBcc},
+				{"Subject", mailMessage.gSubject},
+				{"ContentType", mailMessage.gContentType}};
+
+		for (String[] field : fields) {
+			if (field[1] != null)
+				properties.setProperty(field[0], field[1]);
+		}
+
+		properties.setProperty("Body", Base64.getEncoder().encodeToString(mailMessage.gBody));
+
+		try {
+			if (!outboxDirectory.isDirectory() && !outboxDirectory.mkdirs())
+				throw new Exception("Unable to create directory " + outboxDirectory);
+
+			try (FileOutputStream outputStream = new FileOutputStream(tempFile)) {
+				properties.store(outputStream, JAddin.JADDIN_NAME + " outbox message of " + gUserAddinName);
+				outputStream.getFD().sync();
+			}
+
+			Files.move(tempFile.toPath(), outboxFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+			// Force the rename to disk (not supported for directories on all platforms)
+			try (FileChannel directoryChannel = FileChannel.open(outboxDirectory.toPath(), StandardOpenOption.READ)) {
+				directoryChannel.force(true);
+			} catch (IOException e) {
+				logDebug("Unable to force outbox directory " + outboxDirectory + " to disk: " + e.getMessage());
+			}
+
+		} catch (Exception e) {
+			logMessage("Unable to write outbox message for " + mailMessage.gTo + ": " + e.getMessage());
+			gDBLastErrorMessage.set(e.getMessage());
+			tempFile.delete();
+			return false;
+		}
+
+		mailMessage.gOutboxFile = outboxFile;
+		gOutboxDepth.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Event received by <code>waitForEvent()</code>.
+	 */
+	public static final class AddinEvent {
+
+		/**
+		 * Event types.
+		 */
+		public enum EventType {
+			/** Console command ("Tell AddinName xxxxxxxx"), the command line is returned by <code>getText()</code> */
+			COMMAND,
+			/** Beginning of a new hour */
+			NEXT_HOUR,
+			/** Beginning of a new day */
+			NEXT_DAY,
+			/** Termination requested ("Quit", "Exit" or Domino server shutdown) */
+			STOP,
+			/** Event posted by <code>postEvent()</code>, the name is returned by <code>getText()</code> */
+			CUSTOM
+		}
+
+		// Instance variables
+		private final EventType	gEventType;
+		private final String	gText;
+		private final Object	gPayload;
+
+		/**
+		 * Create the event.
+		 *
+		 * @param	eventType	Event type
+		 * @param	text		Command line, event name or null
+		 * @param	payload		Event data or null
+		 */
+		AddinEvent(EventType eventType, String text, Object payload) {
+			gEventType	= eventType;
+			gText		= text;
+			gPayload	= payload;
+		}
+
+		/**
+		 * Get the event data of a custom event.
+		 *
+		 * @return	Event data or null
+		 */
+		public Object getPayload() {
+			return (gPayload);
+		}
+
+		/**
+		 * Get the command line of a command event or the name of a custom event.
+		 *
+		 * @return	Text or null
+		 */
+		public String getText() {
+			return (gText);
+		}
+
+		/**
+		 * Get the event type.
+		 *
+		 * @return	Event type
+		 */
+		public EventType getType() {
+			return (gEventType);
+		}
+
+		/**
+		 * Get a short description of the event.
+		 *
+		 * @return	Event type and text
+		 */
+		@Override
+		public String toString() {
+			return ((gText == null) ? gEventType.toString() : gEventType + " " + gText);
+		}
+	}
+
+	/**
+	 * Consumer of the chunks read by <code>readChunks()</code>.
+	 */
+	@FunctionalInterface
+	interface ChunkConsumer {
+
+		/**
+		 * Process a chunk.
+		 *
+		 * @param	chunk		Chunk between position and limit
+		 * @throws	Exception	Processing error
+		 */
+		void accept(ByteBuffer chunk) throws Exception;
+	}
+
+	/**
+	 * Arena tracking the Domino objects returned by the dbXXXX methods of one thread. Closing the arena recycles all
+	 * objects not yet recycled thru the bulk recycle path of <code>dbRecycleObjects()</code>.
+	 */
+	public final class DbArena implements AutoCloseable {
+
+		// Instance variables (the objects are removed when recycled thru dbRecycleObjects() on the same thread)
+		private final DbArena		gParentArena;
+		private final Set<Base>		gHandles		= Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<Base, Boolean>()));
+		private boolean				gClosed			= false;
+
+		/**
+		 * Create the arena.
+		 *
+		 * @param	parentArena	Enclosing arena of the current thread or null
+		 */
+		DbArena(DbArena parentArena) {
+			gParentArena = parentArena;
+		}
+
+		/**
+		 * Add a Domino object not created by the dbXXXX methods to the arena.
+		 *
+		 * @param	handle	Domino object
+		 * @return	Passed Domino object
+		 */
+		public <T extends Base> T add(T handle) {
+			return (trackHandle(handle, this));
+		}
+
+		/**
+		 * Recycle all Domino objects of the arena which were not yet recycled and restore the enclosing arena.
+		 */
+		@Override
+		public void close() {
+
+			// Check if arena already closed
+			if (gClosed)
+				return;
+
+			gClosed = true;
+
+			if (gCurrentArena.get() == this) {
+				if (gParentArena == null)
+					gCurrentArena.remove();
+				else
+					gCurrentArena.set(gParentArena);
+			}
+
+			// Get all objects not already recycled by the user add-in
+			Vector<Base> liveHandles = null;
+
+			synchronized (gHandles) {
+				liveHandles = new Vector<Base>(gHandles);
+				gHandles.clear();
+			}
+
+			if (liveHandles.isEmpty())
+				return;
+
+			logDebug("Closing arena with " + liveHandles.size() + " Domino object(s)");
+			dbRecycleObjects(liveHandles);
+		}
+
+		/**
+		 * Get the number of Domino objects tracked by the arena.
+		 *
+		 * @return	Number of Domino objects
+		 */
+		public int size() {
+			return (gHandles.size());
+		}
+	}
+
+	/**
+	 * Result of the batched <code>dbStampDocuments()</code> and <code>dbUpdateDocuments()</code> methods.
+	 */
+	public static final class DbBatchResult {
+
+		// Instance variables
+		private int					gSuccessCount	= 0;
+		private Map<String, String>	gFailures		= new LinkedHashMap<String, String>();
+		private String				gErrorMessage	= null;
+
+		/**
+		 * Record a failed document.
+		 *
+		 * @param	documentID	Universal ID or position of the document
+		 * @param	message		Error message
+		 */
+		private void addFailure(String documentID, String message) {
+			gFailures.put(documentID, message);
+		}
+
+		/**
+		 * Get the error which stopped the whole batch.
+		 *
+		 * @return	Error message or null if the batch was processed
+		 */
+		public String getErrorMessage() {
+			return (gErrorMessage);
+		}
+
+		/**
+		 * Get the number of failed documents.
+		 *
+		 * @return	Number of failed documents
+		 */
+		public int getFailureCount() {
+			return (gFailures.size());
+		}
+
+		/**
+		 * Get the failed documents.
+		 *
+		 * @return	Universal ID (or position) and error message of every failed document
+		 */
+		public Map<String, String> getFailures() {
+			return (Collections.unmodifiableMap(gFailures));
+		}
+
+		/**
+		 * Get the number of successfully updated documents.
+		 *
+		 * @return	Number of updated documents
+		 */
+		public int getSuccessCount() {
+			return (gSuccessCount);
+		}
+
+		/**
+		 * Check if all documents were updated.
+		 *
+		 * @return	True if the batch was processed and no document failed, false otherwise
+		 */
+		public boolean isSuccess() {
+			return ((gErrorMessage == null) && gFailures.isEmpty());
+		}
+
+		/**
+		 * Mark the whole batch as failed (e.g. invalid arguments or interrupted).
+		 *
+		 * @param	message		Error message
+		 * @return	This result
+		 */
+		private DbBatchResult setFailed(String message) {
+			gErrorMessage = message;
+			return (this);
+		}
+	}
+
+	/**
+	 * Circuit breaker and adaptive concurrency limit of a database. The circuit is closed (calls allowed), open (calls
+	 * rejected) or half-open (a single trial call allowed after the open time).
+	 */
+	final class DbCircuitBreaker {
+
+		// Constants
+		static final String	STATE_CLOSED		= "Closed";
+		static final String	STATE_OPEN			= "Open";
+		static final String	STATE_HALF_OPEN		= "HalfOpen";
+		static final int	MIN_LIMIT			= 1;
+		static final int	MAX_LIMIT			= 64;
+		static final double	LATENCY_WEIGHT		= 0.2;		// Weight of the last measurement in the average
+
+		// Instance variables
+		private final String	gDbName;
+		private String			gState				= STATE_CLOSED;
+		private long			gOpenUntil			= 0;
+		private boolean			gTrialActive		= false;
+		private int				gFailureCount		= 0;
+		private double			gLatencyMillis		= 0;
+		private long			gRejectedCount		= 0;
+		private double			gLimit				= 4;
+		private int				gInFlight			= 0;
+
+		/**
+		 * Create the circuit breaker.
+		 *
+		 * @param	dbName	Database name
+		 */
+		DbCircuitBreaker(String dbName) {
+			gDbName = dbName;
+		}
+
+		/**
+		 * Wait for a permit within the adaptive limit.
+		 *
+		 * @param	timeoutMillis	Maximum wait time
+		 * @return	True if permit acquired, false if timeout or circuit open
+		 * @throws	InterruptedException	Wait was interrupted
+		 */
+		synchronized boolean acquirePermit(long timeoutMillis) throws InterruptedException {
+
+			long deadline = System.currentTimeMillis() + timeoutMillis;
+
+			while (gInFlight >= (int) gLimit) {
+
+				long waitTime = deadline - System.currentTimeMillis();
+
+				if (waitTime <= 0)
+					return false;
+
+				wait(waitTime);
+			}
+
+			// Check the state without claiming the trial call of a half-open circuit, it is left to the calls made with the permit
+			if ((gState == STATE_OPEN) && (System.currentTimeMillis() < gOpenUntil)) {
+				gRejectedCount++;
+				return false;
+			}
+
+			gInFlight++;
+			return true;
+		}
+
+		/**
+		 * Check if a call is allowed.
+		 *
+		 * @return	True if the call may proceed, false if it must fail fast
+		 */
+		synchronized boolean allowRequest() {
+
+			if (gState == STATE_CLOSED)
+				return true;
+
+			// Allow a single trial call after the open time
+			if ((gState == STATE_OPEN) && (System.currentTimeMillis() >= gOpenUntil))
+				gState = STATE_HALF_OPEN;
+
+			if ((gState == STATE_HALF_OPEN) && !gTrialActive) {
+				gTrialActive = true;
+				return true;
+			}
+
+			gRejectedCount++;
+			return false;
+		}
+
+		/**
+		 * Record the result of a call and adjust the state and the limit. A state change is logged after the monitor
+		 * is released, so a slow console does not delay the other calls.
+		 *
+		 * @param	latencyNanos	Latency of the call
+		 * @param	success			Indicator if the call succeeded
+		 */
+		void recordResult(long latencyNanos, boolean success) {
+
+			String message = null;
+
+			synchronized (this) {
+				message = updateState(latencyNanos, success);
+			}
+
+			if (message != null)
+				logMessage(message);
+		}
+
+		/**
+		 * Release a permit acquired thru <code>acquirePermit()</code>. Only the limit is adjusted, the state of the
+		 * circuit is changed by the database calls made with the permit.
+		 *
+		 * @param	latencyNanos	Time the permit was held
+		 * @param	success			Indicator if the work succeeded
+		 */
+		synchronized void releasePermit(long latencyNanos, boolean success) {
+			gInFlight--;
+			updateLimit(latencyNanos, success);
+			notifyAll();
+		}
+
+		/**
+		 * Adjust the limit to the result of a call (the caller holds the monitor).
+		 *
+		 * @param	latencyNanos	Latency of the call
+		 * @param	success			Indicator if the call succeeded
+		 * @return	True if the call succeeded within the latency budget
+		 */
+		private boolean updateLimit(long latencyNanos, boolean success) {
+
+			double	latencyMillis	= latencyNanos / 1000000.0;
+			boolean	withinBudget	= success && (latencyMillis <= gBreakerLatencyBudgetMillis);
+
+			gLatencyMillis = (gLatencyMillis == 0) ? latencyMillis : (LATENCY_WEIGHT * latencyMillis) + ((1 - LATENCY_WEIGHT) * gLatencyMillis);
+
+			// Additive increase per round of fast calls, multiplicative decrease on slow or failed calls
+			if (withinBudget)
+				gLimit = Math.min(MAX_LIMIT, gLimit + (1.0 / gLimit));
+			else
+				gLimit = Math.max(MIN_LIMIT, gLimit / 2);
+
+			return (withinBudget);
+		}
+
+		/**
+		 * Adjust the state and the limit to the result of a call (the caller holds the monitor).
+		 *
+		 * @param	latencyNanos	Latency of the call
+		 * @param	success			Indicator if the call succeeded
+		 * @return	Message to be logged on a state change or null
+		 */
+		private String updateState(long latencyNanos, boolean success) {
+
+			boolean withinBudget = updateLimit(latencyNanos, success);
+
+			// Update the circuit state
+			if (gState == STATE_HALF_OPEN) {
+				gTrialActive = false;
+
+				if (withinBudget) {
+					gState			= STATE_CLOSED;
+					gFailureCount	= 0;
+					return ("Circuit breaker for " + gDbName + " is closed again");
+				}
+
+				gState		= STATE_OPEN;
+				gOpenUntil	= System.currentTimeMillis() + gBreakerOpenTimeMillis;
+				return null;
+			}
+
+			gFailureCount = withinBudget ? 0 : gFailureCount + 1;
+
+			if ((gState == STATE_CLOSED) && (gFailureCount >= gBreakerFailureThreshold)) {
+				gState		= STATE_OPEN;
+				gOpenUntil	= System.currentTimeMillis() + gBreakerOpenTimeMillis;
+				return ("Circuit breaker for " + gDbName + " opened after " + gFailureCount + " failed or slow calls (average latency " + Math.round(gLatencyMillis) + " ms)");
+			}
+
+			return null;
+		}
+
+		/**
+		 * Publish the state of the circuit breaker as Domino statistics.
+		 */
+		void updateStatistics() {
+
+			String		state			= null;
+			double		latencyMillis	= 0;
+			double		limit			= 0;
+			double		rejectedCount	= 0;
+
+			synchronized (this) {
+				state			= gState;
+				latencyMillis	= Math.round(gLatencyMillis);
+				limit			= (int) gLimit;
+				rejectedCount	= gRejectedCount;
+			}
+
+			setDominoStatistic(JAddinThread.STAT_BREAKER_PREFIX + gDbName + ".State", state);
+			setDominoStatistic(JAddinThread.STAT_BREAKER_PREFIX + gDbName + ".LatencyMs", latencyMillis);
+			setDominoStatistic(JAddinThread.STAT_BREAKER_PREFIX + gDbName + ".Limit", limit);
+			setDominoStatistic(JAddinThread.STAT_BREAKER_PREFIX + gDbName + ".Rejected", rejectedCount);
+		}
+	}
+
+	/**
+	 * Members of a cluster cached by <code>dbGetClusterServers()</code>.
+	 */
+	static final class DbClusterMembers {
+
+		// Instance variables
+		final String[]	gServers;
+		final long		gLoadTime	= System.currentTimeMillis();
+
+		/**
+		 * Create the cache entry.
+		 *
+		 * @param	servers	Server names
+		 */
+		DbClusterMembers(String[] servers) {
+			gServers = servers;
+		}
+	}
+
+	/**
+	 * Weak reference to a Domino object tracked for the leak report. References are equal if they refer to the same
+	 * object, so a new reference can be used to look up the tracked one.
+	 */
+	static final class DbHandleReference extends WeakReference<Base> {
+
+		// Instance variables
+		final int		gHashCode;
+		final String	gClassName;
+		final Throwable	gAllocationSite;
+
+		/**
+		 * Create the reference.
+		 *
+		 * @param	handle			Domino object
+		 * @param	queue			Queue receiving the reference when the object is garbage collected or null
+		 * @param	allocationSite	Allocation site or null for a lookup reference
+		 */
+		DbHandleReference(Base handle, ReferenceQueue<Base> queue, Throwable allocationSite) {
+			super(handle, queue);
+			gHashCode		= System.identityHashCode(handle);
+			gClassName		= handle.getClass().getSimpleName();
+			gAllocationSite	= allocationSite;
+		}
+
+		/**
+		 * Compare the referenced object with another reference.
+		 *
+		 * @param	other	Other reference
+		 * @return	True if both refer to the same object
+		 */
+		@Override
+		public boolean equals(Object other) {
+
+			if (other == this)
+				return true;
+
+			if (!(other instanceof DbHandleReference))
+				return false;
+
+			Base handle = get();
+			return ((handle != null) && (handle == ((DbHandleReference) other).get()));
+		}
+
+		/**
+		 * Get the identity hash code of the referenced object.
+		 *
+		 * @return	Hash code
+		 */
+		@Override
+		public int hashCode() {
+			return (gHashCode);
+		}
+	}
+
+	/**
+	 * Platform thread of <code>getIOExecutor()</code> on JVMs without virtual threads.
+	 */
+	static final class DbIOThread extends Thread {
+
+		/**
+		 * Create the thread.
+		 *
+		 * @param	task	Task of the executor
+		 * @param	name	Thread name
+		 */
+		DbIOThread(Runnable task, String name) {
+			super(task, name);
+		}
+	}
+
+	/**
+	 * Result of <code>dbMailMerge()</code>. The render time is the sum over all rendering threads, the queue time is the
+	 * elapsed time to read, render and queue all messages and the deposit time is the elapsed time waiting for the mail
+	 * submitter afterwards.
+	 */
+	public static final class DbMailMergeResult {
+
+		// Instance variables
+		private int		gRecipientCount	= 0;
+		private int		gDepositedCount	= 0;
+		private int		gFailedCount	= 0;
+		private int		gPendingCount	= 0;
+		private long	gRenderMillis	= 0;
+		private long	gQueueMillis	= 0;
+		private long	gDepositMillis	= 0;
+		private long	gElapsedMillis	= 0;
+		private String	gErrorMessage	= null;
+
+		/**
+		 * Get the number of deposited messages.
+		 *
+		 * @return	Number of messages
+		 */
+		public int getDepositedCount() {
+			return (gDepositedCount);
+		}
+
+		/**
+		 * Get the elapsed time waiting for the deposits.
+		 *
+		 * @return	Time in milliseconds
+		 */
+		public long getDepositMillis() {
+			return (gDepositMillis);
+		}
+
+		/**
+		 * Get the total elapsed time.
+		 *
+		 * @return	Time in milliseconds
+		 */
+		public long getElapsedMillis() {
+			return (gElapsedMillis);
+		}
+
+		/**
+		 * Get the error message if the recipients could not be read completely. The counts include the messages queued
+		 * before the error.
+		 *
+		 * @return	Error message or null
+		 */
+		public String getErrorMessage() {
+			return (gErrorMessage);
+		}
+
+		/**
+		 * Get the number of messages not sent (invalid recipient, queue full or delivery failed).
+		 *
+		 * @return	Number of messages
+		 */
+		public int getFailedCount() {
+			return (gFailedCount);
+		}
+
+		/**
+		 * Get the number of messages still queued when the timeout elapsed.
+		 *
+		 * @return	Number of messages
+		 */
+		public int getPendingCount() {
+			return (gPendingCount);
+		}
+
+		/**
+		 * Get the elapsed time to read, render and queue the messages.
+		 *
+		 * @return	Time in milliseconds
+		 */
+		public long getQueueMillis() {
+			return (gQueueMillis);
+		}
+
+		/**
+		 * Get the number of recipients read.
+		 *
+		 * @return	Number of recipients
+		 */
+		public int getRecipientCount() {
+			return (gRecipientCount);
+		}
+
+		/**
+		 * Get the rendering time summed over all rendering threads.
+		 *
+		 * @return	Time in milliseconds
+		 */
+		public long getRenderMillis() {
+			return (gRenderMillis);
+		}
+
+		/**
+		 * Get the number of deposited messages per second.
+		 *
+		 * @return	Throughput
+		 */
+		public double getThroughput() {
+			return ((gElapsedMillis == 0) ? 0d : gDepositedCount * 1000d / gElapsedMillis);
+		}
+
+		/**
+		 * Get a summary of the counts and timings.
+		 *
+		 * @return	Summary
+		 */
+		@Override
+		public String toString() {
+			return (gRecipientCount + " recipient(s), " + gDepositedCount + " deposited, " + gFailedCount + " failed, " + gPendingCount + " pending in " +
+					gElapsedMillis + " ms (" + String.format("%.1f", getThroughput()) + " messages/s, queue " + gQueueMillis + " ms, render " + gRenderMillis +
+					" ms, deposit " + gDepositMillis + " ms)");
+		}
+	}
+
+	/**
+	 * Message to be deposited in the router mail box. Failed deposits are scheduled for retry thru the
+	 * <code>Delayed</code> interface.
+	 */
+	static final class DbMailMessage implements Delayed {
+
+		// Instance variables
+		final String	gPrincipal;
+		final String	gFrom;
+		final String	gReplyTo;
+		final String	gTo;
+		final String	gCc;
+		final String	gBcc;
+		final String	gSubject;
+		final String	gContentType;
+		final byte[]	gBody;
+
+		List<DbMimePart>			gParts				= null;		// Only for dbSendMessage(DbMimeMessage)
+		CompletableFuture<Boolean>	gResult				= null;		// Only for dbSendMessageAsync()
+		File						gOutboxFile			= null;		// Only for journaled messages
+		int							gAttempts			= 0;
+		long						gNextAttemptTime	= 0;
+
+		/**
+		 * Create the message (arguments are checked by <code>newMailMessage()</code>).
+		 */
+		DbMailMessage(String principal, String from, String replyTo, String to, String cc, String bcc, String subject, String contentType, byte[] body) {
+			gPrincipal		= principal;
+			gFrom			= from;
+			gReplyTo		= replyTo;
+			gTo				= to;
+			gCc				= cc;
+			gBcc			= bcc;
+			gSubject		= subject;
+			gContentType	= contentType;
+			gBody			= body;
+		}
+
+		/**
+		 * Compare the next attempt time with another message.
+		 *
+		 * @param	other	Other message
+		 * @return	Comparison result
+		 */
+		@Override
+		public int compareTo(Delayed other) {
+			return (Long.compare(getDelay(TimeUnit.MILLISECONDS), other.getDelay(TimeUnit.MILLISECONDS)));
+		}
+
+		/**
+		 * Get the remaining time until the next attempt.
+		 *
+		 * @param	unit	Time unit
+		 * @return	Remaining time
+		 */
+		@Override
+		public long getDelay(TimeUnit unit) {
+			return (unit.convert(gNextAttemptTime - System.currentTimeMillis(), TimeUnit.MILLISECONDS));
+		}
+	}
+
+	/**
+	 * Background thread depositing the queued messages in batches. It uses its own Domino session and keeps the router
+	 * mail box open between batches.
+	 */
+	final class DbMailSubmitter extends NotesThread {
+
+		// Instance variables
+		volatile boolean	gStopRequested	= false;
+
+		/**
+		 * Deposit the queued messages until stopped and the queue is empty.
+		 */
+		@Override
+		public void runNotes() {
+
+			Session							session			= null;
+			String							domain			= null;
+			List<DbMailMessage>				mailBatch		= new ArrayList<DbMailMessage>(MAIL_BATCH_SIZE);
+			Map<DbRouterMailBox, Database>	openMailBoxes	= new HashMap<DbRouterMailBox, Database>();
+
+			try {
+				session	= NotesFactory.createSession();
+				session.setConvertMime(false);
+				domain	= getMailDomain(session);
+			} catch (NotesException e) {
+				logMessage("Unable to create Domino session for mail submitter: " + e.text);
+				dbRecycleObjects(session);
+				return;
+			}
+
+			while (!gStopRequested || !gMailQueue.isEmpty()) {
+
+				// Take the messages due for retry, then wait for the next message and take all other queued messages up to the batch size
+				try {
+					gMailRetryQueue.drainTo(mailBatch, MAIL_BATCH_SIZE);
+
+					DbMailMessage mailMessage = gMailQueue.poll(mailBatch.isEmpty() ? 1000L : 0L, TimeUnit.MILLISECONDS);
+
+					if (mailMessage != null) {
+						mailBatch.add(mailMessage);
+						gMailQueue.drainTo(mailBatch, MAIL_BATCH_SIZE - mailBatch.size());
+					}
+
+					if (mailBatch.isEmpty())
+						continue;
+
+				} catch (InterruptedException e) {
+					continue;
+				}
+
+				// Deposit the batch spread over the router mail boxes (kept open for the next batch)
+				for (DbMailMessage mailMessage : mailBatch) {
+
+					DbRouterMailBox	routerMailBox	= null;
+					Database		mailBox			= null;
+
+					try {
+						for (DbRouterMailBox candidateMailBox : getRouterMailBoxes(session)) {
+
+							mailBox = openMailBoxes.get(candidateMailBox);
+
+							if (mailBox == null) {
+								mailBox = candidateMailBox.open(session);
+
+								if (mailBox != null)
+									openMailBoxes.put(candidateMailBox, mailBox);
+							}
+
+							if (mailBox != null) {
+								routerMailBox = candidateMailBox;
+								break;
+							}
+						}
+
+						if (mailBox == null) {
+							failDelivery(mailMessage, "Unable to open Domino router mail box");
+							continue;
+						}
+
+						routerMailBox.deposit(session, mailBox, domain, mailMessage);
+						gMailDeposited.incrementAndGet();
+
+						// Remove the message from the outbox and signal the delivery
+						if (mailMessage.gOutboxFile != null) {
+							mailMessage.gOutboxFile.delete();
+							gOutboxDepth.decrementAndGet();
+						}
+
+						if (mailMessage.gResult != null)
+							mailMessage.gResult.complete(Boolean.TRUE);
+
+					} catch (NotesException e) {
+						failDelivery(mailMessage, "Unable to create mail document in router mail box: " + e.text);
+
+						// Reopen the router mail box for the next message
+						if (routerMailBox != null)
+							openMailBoxes.remove(routerMailBox);
+
+						dbRecycleObjects(mailBox);
+					} catch (RuntimeException e) {
+						// The message itself cannot be deposited (e.g. invalid MIME part), retrying does not help
+						discardDelivery(mailMessage, "Unable to create mail document in router mail box: " + e);
+					}
+				}
+
+				logDebug("Mail batch of " + mailBatch.size() + " message(s) processed");
+				mailBatch.clear();
+			}
+
+			// Messages waiting for retry are kept in the outbox for the next run (their result is not known yet)
+			for (DbMailMessage mailMessage : gMailRetryQueue.toArray(new DbMailMessage[0])) {
+				if (mailMessage.gOutboxFile == null)
+					gMailFailed.incrementAndGet();
+
+				if (mailMessage.gResult != null) {
+					if (mailMessage.gOutboxFile == null)
+						mailMessage.gResult.complete(Boolean.FALSE);
+					else
+						mailMessage.gResult.completeExceptionally(new CancellationException("Message kept in outbox for delivery at next start"));
+				}
+			}
+			gMailRetryQueue.clear();
+
+			if (gOutboxDepth.get() > 0)
+				logMessage(gOutboxDepth.get() + " message(s) kept in outbox for delivery at next start");
+
+			dbRecycleObjects(openMailBoxes.values().toArray(), session);
+		}
+
+		/**
+		 * Give up the delivery of a message: remove it from the outbox and signal the failure.
+		 *
+		 * @param	mailMessage		Message
+		 * @param	errorMessage	Reason
+		 */
+		private void discardDelivery(DbMailMessage mailMessage, String errorMessage) {
+
+			logMessage(errorMessage + ", message to " + mailMessage.gTo + " not delivered");
+			gMailFailed.incrementAndGet();
+
+			if (mailMessage.gOutboxFile != null) {
+				mailMessage.gOutboxFile.delete();
+				gOutboxDepth.decrementAndGet();
+			}
+
+			if (mailMessage.gResult != null)
+				mailMessage.gResult.complete(Boolean.FALSE);
+		}
+
+		/**
+		 * Schedule a failed message for retry with exponential backoff, or give up after the maximum number of attempts.
+		 *
+		 * @param	mailMessage		Failed message
+		 * @param	errorMessage	Reason of the failure
+		 */
+		private void failDelivery(DbMailMessage mailMessage, String errorMessage) {
+
+			mailMessage.gAttempts++;
+
+			if (mailMessage.gAttempts < MAIL_MAX_ATTEMPTS) {
+				long retryDelay = Math.min(MAIL_RETRY_MAX_DELAY_MS, MAIL_RETRY_DELAY_MS << (mailMessage.gAttempts - 1));
+				logDebug(errorMessage + ", message to " + mailMessage.gTo + " retried in " + (retryDelay / 1000L) + " seconds");
+
+				mailMessage.gNextAttemptTime = System.currentTimeMillis() + retryDelay;
+				gMailRetryQueue.add(mailMessage);
+				gMailRetries.incrementAndGet();
+				return;
+			}
+
+			discardDelivery(mailMessage, errorMessage + " after " + mailMessage.gAttempts + " attempts");
+		}
+	}
+
+	/**
+	 * Precompiled template of <code>dbMailMerge()</code>. Subject and body contain fields like <code>${FirstName}</code>,
+	 * which are replaced by the field values of the recipient (unknown fields are replaced by an empty string). The
+	 * templates are parsed once, so rendering only concatenates the literal parts and the values.
+	 */
+	public static final class DbMailTemplate {
+
+		// Instance variables
+		final String			gFrom;
+		final String			gRecipientField;
+		final String			gContentType;
+		private final String[]	gSubjectParts;
+		private final String[]	gBodyParts;
+		private final int		gBodyLength;
+
+		/**
+		 * Create the template.
+		 */
+		private DbMailTemplate(String from, String recipientField, String contentType, String[] subjectParts, String[] bodyParts) {
+
+			int bodyLength = 0;
+
+			for (int index = 0; index < bodyParts.length; index += 2)
+				bodyLength += bodyParts[index].length();
+
+			gFrom			= from;
+			gRecipientField	= recipientField;
+			gContentType	= contentType;
+			gSubjectParts	= subjectParts;
+			gBodyParts		= bodyParts;
+			gBodyLength		= bodyLength;
+		}
+
+		/**
+		 * Compile a template.
+		 *
+		 * @param	from			Senders name
+		 * @param	recipientField	Field holding the recipient address, e.g. "InternetAddress"
+		 * @param	subject			Subject template
+		 * @param	contentType		Content type of body, e.g. "text/html; charset=UTF-8"
+		 * @param	body			Body template
+		 * @return	Compiled template
+		 */
+		public static DbMailTemplate compile(String from, String recipientField, String subject, String contentType, String body) {
+
+			if ((from == null) || (from.length() == 0) || (recipientField == null) || (recipientField.length() == 0))
+				throw new IllegalArgumentException("Sender and recipient field must be specified");
+
+			return (new DbMailTemplate(from, recipientField, contentType, parse((subject == null) ? "" : subject), parse((body == null) ? "" : body)));
+		}
+
+		/**
+		 * Get the names of all fields used by the template including the recipient field.
+		 *
+		 * @return	Field names
+		 */
+		public String[] getFieldNames() {
+
+			List<String> fieldNames = new ArrayList<String>();
+			fieldNames.add(gRecipientField);
+
+			for (String[] parts : new String[][] {gSubjectParts, gBodyParts}) {
+				for (int index = 1; index < parts.length; index += 2) {
+					if (!fieldNames.contains(parts[index]))
+						fieldNames.add(parts[index]);
+				}
+			}
+
+			return (fieldNames.toArray(new String[fieldNames.size()]));
+		}
+
+		/**
+		 * Render the body.
+		 *
+		 * @param	fieldValues	Field values of the recipient
+		 * @return	Body
+		 */
+		public String renderBody(Map<String, ?> fieldValues) {
+			return (render(gBodyParts, fieldValues, gBodyLength + 256));
+		}
+
+		/**
+		 * Render the subject.
+		 *
+		 * @param	fieldValues	Field values of the recipient
+		 * @return	Subject
+		 */
+		public String renderSubject(Map<String, ?> fieldValues) {
+			return (render(gSubjectParts, fieldValues, 128));
+		}
+
+		/**
+		 * Split a template into alternating literal parts and field names, starting and ending with a literal part.
+		 *
+		 * @param	template	Template
+		 * @return	Parts
+		 */
+		private static String[] parse(String template) {
+
+			List<String>	parts		= new ArrayList<String>();
+			int				position	= 0;
+			int				fieldStart	= 0;
+
+			while ((fieldStart = template.indexOf("${", position)) != -1) {
+
+				int fieldEnd = template.indexOf('}', fieldStart + 2);
+
+				if (fieldEnd == -1)
+					break;
+
+				parts.add(template.substring(position, fieldStart));
+				parts.add(template.substring(fieldStart + 2, fieldEnd).trim());
+				position = fieldEnd + 1;
+			}
+
+			parts.add(template.substring(position));
+			return (parts.toArray(new String[parts.size()]));
+		}
+
+		/**
+		 * Concatenate the literal parts and the field values.
+		 */
+		private static String render(String[] parts, Map<String, ?> fieldValues, int capacity) {
+
+			StringBuilder text = new StringBuilder(capacity);
+
+			for (int index = 0; index < parts.length; index++) {
+				if ((index & 1) == 0)
+					text.append(parts[index]);
+				else
+					text.append(toText(fieldValues.get(parts[index])));
+			}
+
+			return (text.toString());
+		}
+
+		/**
+		 * Convert a field value to text. Multiple values are separated by a comma.
+		 *
+		 * @param	value	Field value (e.g. a Vector of item values)
+		 * @return	Text or empty string if null
+		 */
+		static String toText(Object value) {
+
+			if (value == null)
+				return ("");
+
+			if (!(value instanceof Collection))
+				return (value.toString());
+
+			StringBuilder text = new StringBuilder();
+
+			for (Object element : (Collection<?>) value) {
+				if (text.length() > 0)
+					text.append(", ");
+
+				text.append(element);
+			}
+
+			return (text.toString());
+		}
+	}
+
+	/**
+	 * Builder of a multipart MIME message sent by <code>dbSendMessage(DbMimeMessage)</code>. Text parts are encoded
+	 * quoted-printable, all other parts base64. The content of files and input streams is read when the message is
+	 * sent, e.g.
+	 * <code>dbSendMessage(new DbMimeMessage(from, to, "Report").addPart("text/html", html).addAttachment(reportFile, "application/pdf"))</code>.
+	 */
+	public static final class DbMimeMessage {
+
+		// Instance variables
+		final String			gFrom;
+		final String			gTo;
+		final String			gSubject;
+		final List<DbMimePart>	gParts		= new ArrayList<DbMimePart>();
+		String					gPrincipal	= null;
+		String					gReplyTo	= null;
+		String					gCc			= null;
+		String					gBcc		= null;
+
+		/**
+		 * Create the message.
+		 *
+		 * @param	from	Senders name
+		 * @param	to		Recipient name
+		 * @param	subject	Subject
+		 */
+		public DbMimeMessage(String from, String to, String subject) {
+			gFrom		= from;
+			gTo			= to;
+			gSubject	= subject;
+		}
+
+		/**
+		 * Add a file attachment.
+		 *
+		 * @param	file		File to be attached (read when the message is sent)
+		 * @param	contentType	Content type, e.g. "application/pdf"
+		 * @return	This message
+		 */
+		public DbMimeMessage addAttachment(File file, String contentType) {
+			gParts.add(new DbMimePart(contentType, DbMimePart.ATTACHMENT, file.getName(), null, file, null, null));
+			return (this);
+		}
+
+		/**
+		 * Add an attachment read from an input stream.
+		 *
+		 * @param	fileName	File name shown to the recipient
+		 * @param	contentType	Content type, e.g. "application/pdf"
+		 * @param	inputStream	Content (read and closed when the message is sent)
+		 * @return	This message
+		 */
+		public DbMimeMessage addAttachment(String fileName, String contentType, InputStream inputStream) {
+			gParts.add(new DbMimePart(contentType, DbMimePart.ATTACHMENT, fileName, null, null, inputStream, null));
+			return (this);
+		}
+
+		/**
+		 * Add an inline part referenced from a HTML part, e.g. <code>&lt;img src="cid:logo"&gt;</code>.
+		 *
+		 * @param	contentID	Content ID without angle brackets, e.g. "logo"
+		 * @param	contentType	Content type, e.g. "image/png"
+		 * @param	file		File to be embedded (read when the message is sent)
+		 * @return	This message
+		 */
+		public DbMimeMessage addInline(String contentID, String contentType, File file) {
+			gParts.add(new DbMimePart(contentType, DbMimePart.INLINE, file.getName(), contentID, file, null, null));
+			return (this);
+		}
+
+		/**
+		 * Add an inline part read from an input stream.
+		 *
+		 * @param	contentID	Content ID without angle brackets, e.g. "logo"
+		 * @param	contentType	Content type, e.g. "image/png"
+		 * @param	inputStream	Content (read and closed when the message is sent)
+		 * @return	This message
+		 */
+		public DbMimeMessage addInline(String contentID, String contentType, InputStream inputStream) {
+			gParts.add(new DbMimePart(contentType, DbMimePart.INLINE, null, contentID, null, inputStream, null));
+			return (this);
+		}
+
+		/**
+		 * Add a message part.
+		 *
+		 * @param	contentType	Content type, e.g. "text/html; charset=UTF-8"
+		 * @param	content		Content
+		 * @return	This message
+		 */
+		public DbMimeMessage addPart(String contentType, byte[] content) {
+			gParts.add(new DbMimePart(contentType, null, null, null, null, null, content));
+			return (this);
+		}
+
+		/**
+		 * Add a message part read from an input stream.
+		 *
+		 * @param	contentType	Content type, e.g. "text/csv"
+		 * @param	inputStream	Content (read and closed when the message is sent)
+		 * @return	This message
+		 */
+		public DbMimeMessage addPart(String contentType, InputStream inputStream) {
+			gParts.add(new DbMimePart(contentType, null, null, null, null, inputStream, null));
+			return (this);
+		}
+
+		/**
+		 * Set the blind carbon copy recipient.
+		 *
+		 * @param	bcc		Blind carbon copy recipient
+		 * @return	This message
+		 */
+		public DbMimeMessage setBcc(String bcc) {
+			gBcc = bcc;
+			return (this);
+		}
+
+		/**
+		 * Set the copy recipient.
+		 *
+		 * @param	cc		Copy recipient
+		 * @return	This message
+		 */
+		public DbMimeMessage setCc(String cc) {
+			gCc = cc;
+			return (this);
+		}
+
+		/**
+		 * Set the principal name.
+		 *
+		 * @param	principal	Principal name
+		 * @return	This message
+		 */
+		public DbMimeMessage setPrincipal(String principal) {
+			gPrincipal = principal;
+			return (this);
+		}
+
+		/**
+		 * Set the reply address.
+		 *
+		 * @param	replyTo		Reply address
+		 * @return	This message
+		 */
+		public DbMimeMessage setReplyTo(String replyTo) {
+			gReplyTo = replyTo;
+			return (this);
+		}
+	}
+
+	/**
+	 * Part of a <code>DbMimeMessage</code>. Exactly one of file, input stream or bytes holds the content.
+	 */
+	static final class DbMimePart {
+
+		// Constants
+		static final String	ATTACHMENT	= "attachment";
+		static final String	INLINE		= "inline";
+
+		// Instance variables
+		final String		gContentType;
+		final int			gEncoding;
+		final String		gDisposition;
+		final String		gFileName;
+		final String		gContentID;
+		final File			gFile;
+		final InputStream	gInputStream;
+		final byte[]		gBytes;
+
+		/**
+		 * Create the part.
+		 */
+		DbMimePart(String contentType, String disposition, String fileName, String contentID, File file, InputStream inputStream, byte[] bytes) {
+
+			if ((contentType == null) || (contentType.length() == 0))
+				contentType = "application/octet-stream";
+
+			gContentType	= contentType;
+			gEncoding		= contentType.toLowerCase().startsWith("text/") ? MIMEEntity.ENC_QUOTED_PRINTABLE : MIMEEntity.ENC_BASE64;
+			gDisposition	= disposition;
+			gFileName		= fileName;
+			gContentID		= contentID;
+			gFile			= file;
+			gInputStream	= inputStream;
+			gBytes			= (bytes == null) ? new byte[0] : bytes;
+		}
+
+		/**
+		 * Open the content of the part.
+		 *
+		 * @return	Input stream (must be closed)
+		 * @throws	IOException	File not readable
+		 */
+		InputStream openContent() throws IOException {
+
+			if (gFile != null)
+				return (new FileInputStream(gFile));
+
+			if (gInputStream != null)
+				return (gInputStream);
+
+			return (new ByteArrayInputStream(gBytes));
+		}
+
+		/**
+		 * Get a short description of the part.
+		 *
+		 * @return	Content type and file name
+		 */
+		@Override
+		public String toString() {
+			return ((gFileName == null) ? gContentType : gContentType + " (" + gFileName + ')');
+		}
+	}
+
+	/**
+	 * Permit to access a database returned by <code>dbAcquirePermit()</code>. Closing the permit records the time it was
+	 * held in the adaptive limit of the database.
+	 */
+	public final class DbPermit implements AutoCloseable {
+
+		// Instance variables
+		private final DbCircuitBreaker	gCircuitBreaker;
+		private final long				gStartTime		= System.nanoTime();
+		private boolean					gFailed			= false;
+		private boolean					gClosed			= false;
+
+		/**
+		 * Create the permit.
+		 *
+		 * @param	circuitBreaker	Circuit breaker of the database
+		 */
+		DbPermit(DbCircuitBreaker circuitBreaker) {
+			gCircuitBreaker = circuitBreaker;
+		}
+
+		/**
+		 * Release the permit.
+		 */
+		@Override
+		public void close() {
+
+			if (gClosed)
+				return;
+
+			gClosed = true;
+			gCircuitBreaker.releasePermit(System.nanoTime() - gStartTime, !gFailed);
+		}
+
+		/**
+		 * Mark the work done with this permit as failed (reduces the limit of the database).
+		 */
+		public void setFailed() {
+			gFailed = true;
+		}
+	}
+
+	/**
+	 * Progress indicator returned by <code>createProgress()</code>. The completed items are counted without locking, the
+	 * status line text is only built if the last text is older than the update interval of the status line.
+	 */
+	public final class DbProgress implements AutoCloseable {
+
+		// Instance variables
+		private final String		gOperation;
+		private final long			gTotal;
+		private final long			gStartTime		= System.nanoTime();
+		private final AtomicLong	gCompleted		= new AtomicLong();
+		private final AtomicLong	gLastUpdate		= new AtomicLong(gStartTime - JAddin.STATE_FLUSH_INTERVAL_MS * 1000000L);
+
+		/**
+		 * Create the progress indicator.
+		 *
+		 * @param	operation	Description of the operation
+		 * @param	total		Total number of items or 0 if unknown
+		 */
+		DbProgress(String operation, long total) {
+			gOperation	= operation;
+			gTotal		= Math.max(total, 0L);
+			setAddinState(toString());
+		}
+
+		/**
+		 * Show the final state (number of items and elapsed time).
+		 */
+		@Override
+		public void close() {
+			setAddinState(gOperation + " completed: " + gCompleted.get() + " items in " + formatSeconds(getElapsedMillis() / 1000L));
+		}
+
+		/**
+		 * Format a duration as hh:mm:ss.
+		 *
+		 * @param	seconds		Duration in seconds
+		 * @return	Formatted duration
+		 */
+		private String formatSeconds(long seconds) {
+			return (String.format("%02d:%02d:%02d", seconds / 3600L, (seconds / 60L) % 60L, seconds % 60L));
+		}
+
+		/**
+		 * Get the number of completed items.
+		 *
+		 * @return	Completed items
+		 */
+		public long getCompleted() {
+			return (gCompleted.get());
+		}
+
+		/**
+		 * Get the elapsed time since the indicator was created.
+		 *
+		 * @return	Elapsed milliseconds
+		 */
+		public long getElapsedMillis() {
+			return ((System.nanoTime() - gStartTime) / 1000000L);
+		}
+
+		/**
+		 * Get the average number of items completed per second.
+		 *
+		 * @return	Items per second
+		 */
+		public double getRate() {
+
+			long elapsedNanos = System.nanoTime() - gStartTime;
+			return ((elapsedNanos <= 0L) ? 0.0 : gCompleted.get() * 1.0e9 / elapsedNanos);
+		}
+
+		/**
+		 * Get the estimated remaining time based on the average rate.
+		 *
+		 * @return	Remaining seconds or -1 if the total is unknown or nothing is completed yet
+		 */
+		public long getRemainingSeconds() {
+
+			double rate = getRate();
+
+			if ((gTotal == 0L) || (rate <= 0.0))
+				return (-1L);
+
+			return (Math.round(Math.max(gTotal - gCompleted.get(), 0L) / rate));
+		}
+
+		/**
+		 * Set the number of completed items.
+		 *
+		 * @param	completed	Completed items
+		 */
+		public void setCompleted(long completed) {
+			gCompleted.set(completed);
+			updateAddinState();
+		}
+
+		/**
+		 * Count one completed item.
+		 */
+		public void step() {
+			step(1L);
+		}
+
+		/**
+		 * Count completed items.
+		 *
+		 * @param	items	Number of completed items
+		 */
+		public void step(long items) {
+			gCompleted.addAndGet(items);
+			updateAddinState();
+		}
+
+		/**
+		 * Get the status line text.
+		 *
+		 * @return	Operation, completed items, percentage, rate and estimated remaining time
+		 */
+		@Override
+		public String toString() {
+
+			long			completed	= gCompleted.get();
+			long			remaining	= getRemainingSeconds();
+			StringBuilder	text		= new StringBuilder(gOperation.length() + 64).append(gOperation).append(' ').append(completed);
+
+			if (gTotal > 0L)
+				text.append('/').append(gTotal).append(" (").append(Math.min(completed * 100L / gTotal, 100L)).append("%)");
+
+			text.append(", ").append(Math.round(getRate())).append("/s");
+
+			if (remaining >= 0L)
+				text.append(", ETA ").append(formatSeconds(remaining));
+
+			return (text.toString());
+		}
+
+		/**
+		 * Update the status line if the last update is older than the update interval of the status line.
+		 */
+		private void updateAddinState() {
+
+			long currentTime	= System.nanoTime();
+			long lastUpdate		= gLastUpdate.get();
+
+			if ((currentTime - lastUpdate < JAddin.STATE_FLUSH_INTERVAL_MS * 1000000L) || !gLastUpdate.compareAndSet(lastUpdate, currentTime))
+				return;
+
+			setAddinState(toString());
+		}
+	}
+
+	/**
+	 * Output stream applying the quoted-printable content encoding (RFC 2045) on the fly. Line breaks are written as
+	 * CRLF and longer lines are split with soft line breaks.
+	 */
+	static final class DbQuotedPrintableOutputStream extends FilterOutputStream {
+
+		// Constants
+		private static final int	MAX_LINE_LENGTH	= 75;		// Without the trailing '=' of a soft line break
+		private static final char[]	HEX_DIGITS		= "0123456789ABCDEF".toCharArray();
+
+		// Instance variables
+		private int		gLineLength			= 0;
+		private int		gPendingWhitespace	= -1;
+		private boolean	gPendingCR			= false;
+
+		/**
+		 * Create the stream.
+		 *
+		 * @param	outputStream	Stream receiving the encoded content
+		 */
+		DbQuotedPrintableOutputStream(OutputStream outputStream) {
+			super(outputStream);
+		}
+
+		/**
+		 * Encode the remaining characters and close the underlying stream.
+		 *
+		 * @throws	IOException	Underlying stream error
+		 */
+		@Override
+		public void close() throws IOException {
+
+			if (gPendingCR) {
+				gPendingCR = false;
+				writeEncoded('\r');
+			}
+
+			if (gPendingWhitespace != -1) {
+				writeEncoded(gPendingWhitespace);
+				gPendingWhitespace = -1;
+			}
+
+			super.close();
+		}
+
+		/**
+		 * Encode a byte. Trailing whitespace of a line is held back, because it must be encoded before a line break.
+		 *
+		 * @param	value	Byte to be encoded
+		 * @throws	IOException	Underlying stream error
+		 */
+		@Override
+		public void write(int value) throws IOException {
+
+			value &= 0xFF;
+
+			if (gPendingCR) {
+				gPendingCR = false;
+
+				if (value == '\n') {
+					writeLineBreak();
+					return;
+				}
+
+				writeEncoded('\r');
+			}
+
+			if (value == '\r') {
+				gPendingCR = true;
+				return;
+			}
+
+			if (value == '\n') {
+				writeLineBreak();
+				return;
+			}
+
+			if (gPendingWhitespace != -1) {
+				writeLiteral(gPendingWhitespace);
+				gPendingWhitespace = -1;
+			}
+
+			if ((value == ' ') || (value == '\t'))
+				gPendingWhitespace = value;
+			else if ((value >= 33) && (value <= 126) && (value != '='))
+				writeLiteral(value);
+			else
+				writeEncoded(value);
+		}
+
+		/**
+		 * Encode a part of a buffer.
+		 *
+		 * @param	buffer	Buffer
+		 * @param	offset	Start offset
+		 * @param	length	Number of bytes
+		 * @throws	IOException	Underlying stream error
+		 */
+		@Override
+		public void write(byte[] buffer, int offset, int length) throws IOException {
+			for (int index = offset; index < offset + length; index++)
+				write(buffer[index]);
+		}
+
+		/**
+		 * Write an encoded byte.
+		 */
+		private void writeEncoded(int value) throws IOException {
+
+			if (gLineLength + 3 > MAX_LINE_LENGTH)
+				writeSoftLineBreak();
+
+			out.write('=');
+			out.write(HEX_DIGITS[value >> 4]);
+			out.write(HEX_DIGITS[value & 0x0F]);
+			gLineLength += 3;
+		}
+
+		/**
+		 * Write a hard line break.
+		 */
+		private void writeLineBreak() throws IOException {
+
+			if (gPendingWhitespace != -1) {
+				writeEncoded(gPendingWhitespace);
+				gPendingWhitespace = -1;
+			}
+
+			out.write('\r');
+			out.write('\n');
+			gLineLength = 0;
+		}
+
+		/**
+		 * Write a byte as is.
+		 */
+		private void writeLiteral(int value) throws IOException {
+
+			if (gLineLength + 1 > MAX_LINE_LENGTH)
+				writeSoftLineBreak();
+
+			out.write(value);
+			gLineLength++;
+		}
+
+		/**
+		 * Write a soft line break.
+		 */
+		private void writeSoftLineBreak() throws IOException {
+			out.write('=');
+			out.write('\r');
+			out.write('\n');
+			gLineLength = 0;
 		}
 	}
-	
+
 	/**
-	 * Decode passed padded Base64 string
-	 * 
-	 * @param data	Base64 string to decode
-	 * @return Decoded buffer
+	 * Mapping of Domino items or view columns to a Java object, used by <code>dbMapDocument()</code> and
+	 * <code>dbMapView()</code>. The mapping is created once and the factory receives the values in the declared
+	 * order. Every value is a <code>List</code> of the item or column values (empty if the item is missing), e.g.
+	 * <code>DbRecordMapping.ofItems(values -&gt; new Ticket((String) DbRecordMapping.firstValue(values[0]), (List&lt;?&gt;) values[1]), "Subject", "Categories")</code>.
+	 *
+	 * @param	<T>	Type of the mapped Java object
 	 */
-	public final synchronized byte[] fromBase64(String data) {
-		
-		try {
-			return (Base64.getDecoder().decode(data));
-		} catch (Exception e) {
-			logMessage("Unable to decode from Base64 string: " + e.getMessage());
-			return (new byte[0]);
+	public static final class DbRecordMapping<T> {
+
+		// Instance variables
+		private final String[]					gItemNames;
+		private final int[]						gColumnIndexes;
+		private final Function<Object[], T>		gFactory;
+
+		/**
+		 * Create the mapping.
+		 *
+		 * @param	itemNames		Item names or null
+		 * @param	columnIndexes	View column indexes or null
+		 * @param	factory			Factory creating the Java object
+		 */
+		private DbRecordMapping(String[] itemNames, int[] columnIndexes, Function<Object[], T> factory) {
+			gItemNames		= itemNames;
+			gColumnIndexes	= columnIndexes;
+			gFactory		= factory;
 		}
-	}
-	
-	/**
-	 * Hash the passed byte array
-	 * @param hashType	Hash type (MD5, SHA-1, SHA-256)
-	 * @param buffer	Buffer to hash
-	 * @return	Hash code or empty byte array for errors
-	 */
-	public final synchronized byte[] generateHash(String hashType, byte[] buffer) {
-		
-		try {
-			MessageDigest messageDigest = MessageDigest.getInstance(hashType);
-			messageDigest.update(buffer);
-			return ( messageDigest.digest());
-		} catch (Exception e) {
-			logMessage("Unable to hash with " + hashType + " algorithm: " + e.getMessage());
-			return (new byte[0]);
+
+		/**
+		 * Get the first value of a mapped item or column.
+		 *
+		 * @param	value	Mapped value passed to the factory
+		 * @return	First value or null if empty
+		 */
+		public static Object firstValue(Object value) {
+
+			if (!(value instanceof List))
+				return (value);
+
+			List<?> values = (List<?>) value;
+			return (values.isEmpty() ? null : values.get(0));
 		}
-	}
 
-	/**
-	 * Get the parameters passed to the add-in.
-	 * 
-	 * @return	Arguments passed to this add-in or null
-	 */
-	public final String getAddinParameters() {
-		return gStartArguments;
-	}
-	
-	/**
-	 * Get the debug state
-	 * 
-	 * @return	Status of debug logging
-	 */
-	public final boolean getDebugState() {
-		if (isJAddinAlive()) {
-			return (gJAddinMain.getDebugState());
+		/**
+		 * Create a mapping reading view column values (projection without opening the documents).
+		 *
+		 * @param	factory			Factory creating the Java object from the column values
+		 * @param	columnIndexes	Zero-based indexes of the view columns
+		 * @return	Mapping
+		 */
+		public static <T> DbRecordMapping<T> ofColumns(Function<Object[], T> factory, int... columnIndexes) {
+
+			if ((factory == null) || (columnIndexes == null) || (columnIndexes.length == 0))
+				throw new IllegalArgumentException("Factory and column indexes must be specified");
+
+			return (new DbRecordMapping<T>(null, columnIndexes.clone(), factory));
 		}
-		else {
-			return false;
+
+		/**
+		 * Create a mapping reading document items.
+		 *
+		 * @param	factory		Factory creating the Java object from the item values
+		 * @param	itemNames	Names of the items
+		 * @return	Mapping
+		 */
+		public static <T> DbRecordMapping<T> ofItems(Function<Object[], T> factory, String... itemNames) {
+
+			if ((factory == null) || (itemNames == null) || (itemNames.length == 0))
+				throw new IllegalArgumentException("Factory and item names must be specified");
+
+			return (new DbRecordMapping<T>(itemNames.clone(), null, factory));
 		}
 	}
 
 	/**
-	 * Check if Domino database is open.
-	 * 
-	 * @param	db		Domino database
-	 * @return	True if database is open, false otherwise
+	 * Router mail box with its deposit statistics.
 	 */
-	public final boolean isDbOpen(Database db) {
-		
-		// Initialize
-		gDBLastErrorMessage = null;
+	final class DbRouterMailBox {
 
-		// Check arguments
-		if (!(db instanceof Database)) {
-			return false;
+		// Instance variables
+		final String		gName;
+		final AtomicInteger	gInFlight		= new AtomicInteger();
+		final AtomicLong	gDeposited		= new AtomicLong();
+		final AtomicLong	gLatencyNanos	= new AtomicLong();
+
+		/**
+		 * Create the router mail box.
+		 *
+		 * @param	name	Mail box file name, e.g. "mail2.box"
+		 */
+		DbRouterMailBox(String name) {
+			gName = name;
 		}
-			
-		try {
-			return db.isOpen();
-		} catch (Exception e) {
-			logDebug("Unable to check for open Domino database: " + e.getMessage());
-			gDBLastErrorMessage = e.getMessage();
-			return false;
+
+		/**
+		 * Deposit a message in this mail box and record the latency.
+		 *
+		 * @param	session			Domino session of the current thread
+		 * @param	mailBox			This mail box opened by <code>open()</code>
+		 * @param	domain			Domino domain name
+		 * @param	mailMessage		Message to be sent
+		 * @throws	NotesException	Domino error
+		 */
+		void deposit(Session session, Database mailBox, String domain, DbMailMessage mailMessage) throws NotesException {
+
+			long startTime = System.nanoTime();
+			gInFlight.incrementAndGet();
+
+			try {
+				depositMailMessage(session, mailBox, domain, mailMessage);
+				gDeposited.incrementAndGet();
+				gLatencyNanos.addAndGet(System.nanoTime() - startTime);
+			} finally {
+				gInFlight.decrementAndGet();
+			}
 		}
-	}
-	
-	/**
-	 * Return live state of JAddin main thread .
-	 * 
-	 * @return	Indicator if JAddin main thread is alive or not
-	 */
-	public final boolean isJAddinAlive() {
-		
-		if ((gJAddinMain != null) && gJAddinMain.isAlive()) {
-			return true;
-		} else {
-			gJAddinMain = null;
-			return false;
+
+		/**
+		 * Open this mail box.
+		 *
+		 * @param	session			Domino session of the current thread
+		 * @return	Mail box or null if not available
+		 * @throws	NotesException	Domino error
+		 */
+		Database open(Session session) throws NotesException {
+
+			if (session == null)
+				return null;
+
+			Database mailBox = session.getDatabase(null, gName, false);
+
+			if ((mailBox != null) && (mailBox.isOpen() || mailBox.open()))
+				return (mailBox);
+
+			dbRecycleObjects(mailBox);
+			return null;
 		}
-	}
-	
-	/**
- 	 * Write debug message to the Domino console. The message string will be prepended with the debugging
-	 * information, e.g. <code>"DEBUG: AddinName.MethodName(LineNumber) xxxxxxxx"</code>.
-	 * 
-	 * @param	message		Message to be displayed
-	 */
-	public final void logDebug(String message) {
-		
-		if (isJAddinAlive() && gJAddinMain.getDebugState()) {
-			gJAddinMain.logDebug(gUserAddinName, message);
+
+		/**
+		 * Get the mail box name.
+		 *
+		 * @return	Mail box file name
+		 */
+		@Override
+		public String toString() {
+			return (gName);
 		}
 	}
-	
+
 	/**
-	 * Write a log message to the Domino console. The message string will be prepended with the add-in name
-	 * followed by a column, e.g. <code>"HelloWorld: xxxxxxxx"</code>
-	 * 
-	 * @param 	message		Message to be displayed
+	 * Cursor returned by <code>dbSearch()</code> and <code>dbSearchFormula()</code> to read the search result page by
+	 * page. The documents of a page are recycled when the next page is read or the cursor is closed, so only one page is
+	 * held at a time. The documents of a page must therefore not be recycled by the caller.
 	 */
-	public final void logMessage(String message) {
-		if (isJAddinAlive()) {
-			gJAddinMain.logMessage(gUserAddinName, message);
+	public final class DbSearchCursor implements AutoCloseable {
+
+		// Instance variables
+		private DocumentCollection	gDocumentCollection	= null;
+		private Document			gNextDocument		= null;
+		private Vector<Document>	gPageVector			= null;
+		private final int			gPageSize;
+		private int					gReadCount			= 0;
+
+		/**
+		 * Create the cursor and position it on the first document.
+		 *
+		 * @param	documentCollection	Search result
+		 * @param	pageSize			Number of documents per page
+		 * @throws	NotesException		Domino error
+		 */
+		DbSearchCursor(DocumentCollection documentCollection, int pageSize) throws NotesException {
+			gDocumentCollection	= documentCollection;
+			gPageSize			= pageSize;
+			gPageVector			= new Vector<Document>(pageSize);
+			gNextDocument		= documentCollection.getFirstDocument();
 		}
-	}
-		
-	/**
-	 * This method is called from the JAddin framework indirectly thru start(). Its main purpose is to call the
-	 * user code thru addinStart().
-	 */
-	@Override
-	public final void runNotes() {
-		
-		logDebug("Entered runNotes()");
-		
-		// Check if addinInitialize() has failed
-		if (gStartupError) {
-			addinCleanup();
-			return;
+
+		/**
+		 * Recycle the current page and the search result.
+		 */
+		@Override
+		public void close() {
+			dbRecycleObjects(gPageVector);
+			gPageVector.clear();
+			dbRecycleObjects(gNextDocument, gDocumentCollection);
+			gNextDocument		= null;
+			gDocumentCollection	= null;
 		}
-		
-		// Set the initial state
-		setAddinState("Initialization in progress");
-		
-		// Call the user main method addinStart()
-		try {
-			logDebug("Calling " + gUserAddinName + ".addinStart()");
-			addinStart();
-		} catch (Exception e) {
-			// Write the stack trace directly to the standard output
-			e.printStackTrace();
+
+		/**
+		 * Get the total number of documents found.
+		 *
+		 * @return	Number of documents or -1 if error
+		 */
+		public int getCount() {
+
+			try {
+				return ((gDocumentCollection == null) ? 0 : gDocumentCollection.getCount());
+			} catch (Exception e) {
+				gDBLastErrorMessage.set(e.getMessage());
+				return -1;
+			}
 		}
-				
-		// Cleanup the resources
-		addinCleanup();
-	}
-	
-	/**
-	 * Set the add-in status message text. This text is shown in response to the Domino console command <code>"show tasks"</code>.
-	 * 
-	 * @param 	message		Status message
-	 */
-	public final void setAddinState(String message) {
-		if (isJAddinAlive()) {
-			gJAddinMain.setAddinState(gDominoTaskID, message);
+
+		/**
+		 * Get the number of documents read so far.
+		 *
+		 * @return	Number of documents
+		 */
+		public int getReadCount() {
+			return (gReadCount);
 		}
-	}
-	
-	/**
-	 * Set the debug state
-	 * 
-	 * @param	debugState	Debug state 
-	 */
-	public final void setDebugState(boolean debugState) {
-		if (isJAddinAlive()) {
-			gJAddinMain.setDebugState(debugState);
+
+		/**
+		 * Check if more documents are available.
+		 *
+		 * @return	True if another page can be read, false otherwise
+		 */
+		public boolean hasNextPage() {
+			return (gNextDocument != null);
+		}
+
+		/**
+		 * Recycle the previous page and read the next page of documents.
+		 *
+		 * @return	Documents of the page or empty Vector if no more documents or error
+		 */
+		public Vector<Document> nextPage() {
+
+			// Initialize
+			gDBLastErrorMessage.remove();
+
+			// Recycle the previous page and reuse the Vector
+			dbRecycleObjects(gPageVector);
+			gPageVector.clear();
+
+			try {
+				// Read the page and look ahead to the first document of the next page
+				while ((gNextDocument != null) && (gPageVector.size() < gPageSize)) {
+					Document document = gNextDocument;
+					gPageVector.add(document);
+					gNextDocument = gDocumentCollection.getNextDocument(document);
+				}
+
+				gReadCount += gPageVector.size();
+				return (gPageVector);
+
+			} catch (Exception e) {
+				logDebug("Unable to read next page of search result: " + e.getMessage());
+				gDBLastErrorMessage.set(e.getMessage());
+				dbRecycleObjects(gPageVector);
+				gPageVector.clear();
+				gNextDocument = null;
+				return (gPageVector);
+			}
 		}
 	}
-	
+
 	/**
-	 * Set the Domino statistics show in response to 'Show Stat' command.
-	 * 
-	 * @param statsName		Name of statistics
-	 * @param value			Statistics value
+	 * Health score of a server kept over time, based on the measured latency and the recent failures.
 	 */
-	public final void setDominoStatistic(String statsName, Double value) {
-		if (isJAddinAlive()) {
-			gJAddinMain.setDominoStatistic(gUserAddinName, statsName, value);
+	static final class DbServerHealth {
+
+		// Constants
+		static final double	LATENCY_WEIGHT		= 0.3;			// Weight of the last measurement in the average
+		static final long	FAILURE_PENALTY_MS	= 10000L;		// Penalty per consecutive failure
+		static final long	FAILURE_EXPIRY_MS	= 300000L;		// Failures older than 5 minutes are ignored
+
+		// Instance variables
+		private double	gLatencyMillis		= 0;
+		private int		gFailureCount		= 0;
+		private long	gLastFailureTime	= 0;
+
+		/**
+		 * Get the score of the server (lower is better).
+		 *
+		 * @return	Average latency in milliseconds plus penalty for recent failures
+		 */
+		synchronized double getScore() {
+
+			if ((gFailureCount > 0) && ((System.currentTimeMillis() - gLastFailureTime) < FAILURE_EXPIRY_MS))
+				return (gLatencyMillis + (gFailureCount * FAILURE_PENALTY_MS));
+
+			return (gLatencyMillis);
+		}
+
+		/**
+		 * Record a failed access.
+		 */
+		synchronized void recordFailure() {
+			gFailureCount++;
+			gLastFailureTime = System.currentTimeMillis();
+		}
+
+		/**
+		 * Record a successful access.
+		 *
+		 * @param	latencyNanos	Measured latency in nanoseconds
+		 */
+		synchronized void recordSuccess(long latencyNanos) {
+
+			double latencyMillis = latencyNanos / 1000000.0;
+
+			gLatencyMillis	= (gLatencyMillis == 0) ? latencyMillis : (LATENCY_WEIGHT * latencyMillis) + ((1 - LATENCY_WEIGHT) * gLatencyMillis);
+			gFailureCount	= 0;
 		}
 	}
-		
+
 	/**
-	 * Set the Domino statistics show in response to 'Show Stat' command.
-	 * 
-	 * @param statsName		Name of statistics
-	 * @param text			Statistics text
+	 * Output stream writing to a Domino stream. Used behind a <code>BufferedOutputStream</code>, so the content is
+	 * passed in chunks to the native stream.
 	 */
-	public final void setDominoStatistic(String statsName, String text) {
-		if (isJAddinAlive()) {
-			gJAddinMain.setDominoStatistic(gUserAddinName, statsName, text);
+	static final class DbStreamOutputStream extends OutputStream {
+
+		// Instance variables
+		private final Stream	gStream;
+
+		/**
+		 * Create the stream.
+		 *
+		 * @param	stream	Domino stream
+		 */
+		DbStreamOutputStream(Stream stream) {
+			gStream = stream;
+		}
+
+		/**
+		 * Write a byte.
+		 *
+		 * @param	value	Byte
+		 * @throws	IOException	Domino error
+		 */
+		@Override
+		public void write(int value) throws IOException {
+			write(new byte[] {(byte) value}, 0, 1);
+		}
+
+		/**
+		 * Write a part of a buffer.
+		 *
+		 * @param	buffer	Buffer
+		 * @param	offset	Start offset
+		 * @param	length	Number of bytes
+		 * @throws	IOException	Domino error
+		 */
+		@Override
+		public void write(byte[] buffer, int offset, int length) throws IOException {
+
+			try {
+				gStream.write(((offset == 0) && (length == buffer.length)) ? buffer : Arrays.copyOfRange(buffer, offset, offset + length));
+			} catch (NotesException e) {
+				throw new IOException(e.text, e);
+			}
 		}
 	}
 
 	/**
-	 * Encode passed buffer to padded Base64 string
-	 * 
-	 * @param buffer	Buffer to convert
-	 * @return Base64 encoded string in upper-case
+	 * Call watched by the watchdog. The calls of a thread are linked from the innermost to the outermost call.
 	 */
-	public final synchronized String toBase64(byte[] buffer) {
-		
-		try {
-			return (Base64.getEncoder().encodeToString(buffer));
-		} catch (Exception e) {
-			logMessage("Unable to encode buffer to Base64: " + e.getMessage());
-			return null;
+	static final class DbWatch {
+
+		// Instance variables
+		final String		gOperation;
+		final long			gBudgetMillis;
+		final long			gStartTime		= System.nanoTime();
+		final DbWatch		gPrevious;
+		volatile boolean	gReported		= false;
+
+		/**
+		 * Create the watched call.
+		 *
+		 * @param	operation		Description of the call
+		 * @param	budgetMillis	Maximum running time
+		 * @param	previous		Enclosing call of the same thread or null
+		 */
+		DbWatch(String operation, long budgetMillis, DbWatch previous) {
+			gOperation		= operation;
+			gBudgetMillis	= budgetMillis;
+			gPrevious		= previous;
 		}
 	}
-	
+
 	/**
-	 * Delay the execution of the thread
-	 * 
-	 * @param	waitTime	Wait time in milliseconds
+	 * Worker thread of <code>getWorkerExecutor()</code>. The Domino session of the worker is created on first use and
+	 * recycled when the worker terminates.
 	 */
-	public final void waitMilliSeconds(long waitTime) {
-		if (isJAddinAlive()) {
-			gJAddinMain.waitMilliSeconds(waitTime);
+	final class DbWorkerThread extends NotesThread {
+
+		// Instance variables
+		private final Runnable	gTask;
+		private Session			gSession	= null;
+
+		/**
+		 * Create the worker.
+		 *
+		 * @param	task	Task of the executor (runs the queued tasks)
+		 */
+		DbWorkerThread(Runnable task) {
+			gTask = task;
+		}
+
+		/**
+		 * Get the Domino session of this worker.
+		 *
+		 * @return	Session or null if it could not be created
+		 */
+		Session getSession() {
+
+			if (gSession == null) {
+				try {
+					gSession = NotesFactory.createSession();
+				} catch (NotesException e) {
+					logMessage("Unable to create Domino session for " + getName() + ": " + e.text);
+				}
+			}
+
+			return (gSession);
+		}
+
+		/**
+		 * Run the tasks and recycle the session.
+		 */
+		@Override
+		public void runNotes() {
+
+			try {
+				gTask.run();
+			} finally {
+				if (gSession != null)
+					dbRecycleObjects(gSession);
+			}
 		}
 	}
 }